@@ -0,0 +1,84 @@
+package com.almasb.fxglgames.pong;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of output for a group of N clients: an event broadcast, a snapshot and the flush,
+ * with outboxes that drain on the calling thread into sinks that only count bytes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BroadcastBenchmark {
+
+    @Param({ "2", "32", "256" })
+    public int clients;
+
+    @Param({ "text", "binary" })
+    public String format;
+
+    private static class FakeClient extends Client {
+
+        private final boolean binary;
+        private final SnapshotHistory history = new SnapshotHistory();
+        private final Outbox<Object> outbox;
+
+        private long bytes;
+
+        FakeClient(boolean binary) {
+            this.binary = binary;
+
+            outbox = new Outbox<>(Runnable::run, batch -> {
+                for (Object message : batch) {
+                    bytes += message instanceof Frame ? ((Frame) message).size() : ((byte[]) message).length;
+                }
+            }, () -> { });
+        }
+
+        @Override
+        void send(EncodedEvent event) {
+            outbox.event(binary ? event.getBinary() : event.getTextFrame());
+        }
+
+        @Override
+        void sendSnapshot(EncodedSnapshot snapshot) {
+            outbox.snapshot(binary ? history.encode(snapshot) : snapshot.getTextFrame());
+        }
+
+        @Override
+        public Outbox<?> getOutbox() {
+            return outbox;
+        }
+    }
+
+    private ClientGroup group;
+    private final Snapshot snapshot = new Snapshot();
+
+    @Setup
+    public void setUp() {
+        group = new ClientGroup(player -> { }, Runnable::run, true);
+
+        for (int i = 0; i < clients; i++) {
+            group.join(new FakeClient("binary".equals(format)));
+        }
+
+        group.flush();
+
+        snapshot.setBall(Snapshot.PLAYER1, 443, 443.3);
+    }
+
+    @Benchmark
+    public void tick() {
+        snapshot.setSequence(snapshot.getSequence() + 1);
+        snapshot.setBatX(Snapshot.PLAYER1, snapshot.getSequence() % 700);
+
+        group.broadcast(NetworkMessages.HIT_WALL_UP);
+        group.sendSnapshot(snapshot);
+        group.flush();
+    }
+}
@@ -0,0 +1,50 @@
+package com.almasb.fxglgames.pong;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding client input, from the strings of the FXGL transport and the frames of the NIO transport.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InputBenchmark {
+
+    private static final String MESSAGE = "Player,A_PLAYERDOWN,W_PLAYERDOWN,D_ENEMYUP";
+
+    private final ByteBuffer frame = ByteBuffer.allocateDirect(64);
+    private final ByteBuffer ack = ByteBuffer.allocateDirect(16);
+
+    private int checksum;
+    private final CommandDecoder.CommandHandler handler = (player, command) -> checksum += player + command.ordinal();
+
+    @Setup
+    public void setUp() {
+        frame.put(MESSAGE.getBytes(StandardCharsets.US_ASCII)).flip();
+        ack.put("ACK,123456".getBytes(StandardCharsets.US_ASCII)).flip();
+    }
+
+    @Benchmark
+    public int decodeString() {
+        CommandDecoder.decode(MESSAGE, handler);
+        return checksum;
+    }
+
+    @Benchmark
+    public int decodeFrame() {
+        CommandDecoder.decode(frame, handler);
+        return checksum;
+    }
+
+    @Benchmark
+    public int parseAck() {
+        return CommandDecoder.parseAck(ack);
+    }
+}
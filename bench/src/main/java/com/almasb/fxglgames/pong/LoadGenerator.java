@@ -0,0 +1,488 @@
+package com.almasb.fxglgames.pong;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * Simulates many players against a server on this machine, speaking the text protocol on port 55555.
+ *
+ * Every simulated player waits for its PLAYER1_CONNECT or PLAYER2_CONNECT, then presses and releases
+ * A and D with the key tokens of its slot (e.g. "A_PLAYERDOWN" or "D_ENEMYUP") and sometimes fires.
+ * The input-to-snapshot latency is the time from pressing a direction key until a GAME_DATA snapshot
+ * shows the player's bat moving that way. Jitter is measured on the times between snapshots.
+ * At the end every player quits with PLAYERQUIT or ENEMYQUIT and a report is written.
+ *
+ * Usage: java -cp benchmarks.jar com.almasb.fxglgames.pong.LoadGenerator [option=value]...
+ *
+ * <pre>
+ * clients=100        number of connections
+ * duration=30        seconds of play after the last connection has been opened
+ * rate=5             key presses per second per player
+ * pattern=alternate  alternate: left and right in turn, random: a random direction or a stop
+ * fire=0.1           chance of firing with each key press
+ * rampUp=5           milliseconds between two connections
+ * framing=line       line, or raw if the server runs with -Dpong.textFraming=raw (default: as pong.textFraming)
+ * port=55555
+ * report=load-report.txt
+ * seed=1
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final long TIMEOUT_NANOS = 1_000_000_000L;
+
+    // how the messages the server sends start, to find where TCP has merged unframed messages
+    private static final String[] MESSAGE_STARTS = {
+            "GAME_DATA,", "Number of players",
+            NetworkMessages.PLAYER1_CONNECT, NetworkMessages.PLAYER2_CONNECT, NetworkMessages.PLAYER1_QUIT, NetworkMessages.PLAYER2_QUIT,
+            NetworkMessages.HIT_WALL_LEFT, NetworkMessages.HIT_WALL_RIGHT, NetworkMessages.HIT_WALL_UP, NetworkMessages.HIT_WALL_DOWN,
+            NetworkMessages.BALL_HIT_BAT1, NetworkMessages.BALL_HIT_BAT2, NetworkMessages.BAT1_FIRED_BALL, NetworkMessages.BAT2_FIRED_BALL,
+            NetworkMessages.PING + ",", NetworkMessages.UDP_TOKEN + ","
+    };
+
+    private final int numClients;
+    private final long duration;
+    private final double rate;
+    private final boolean alternate;
+    private final double fireChance;
+    private final long rampUp;
+    private final boolean lineFraming;
+    private final int port;
+    private final String reportFile;
+    private final Random random;
+
+    private final List<Bot> bots = new ArrayList<>();
+
+    private final Samples latencies = new Samples();
+    private final Samples intervals = new Samples();
+
+    private long inputs = 0;
+    private long timeouts = 0;
+    private long snapshots = 0;
+    private long connectFailures = 0;
+
+    public LoadGenerator(Map<String, String> options) {
+        numClients = Integer.parseInt(options.getOrDefault("clients", "100"));
+        duration = Long.parseLong(options.getOrDefault("duration", "30")) * 1_000_000_000L;
+        rate = Double.parseDouble(options.getOrDefault("rate", "5"));
+        alternate = !"random".equals(options.getOrDefault("pattern", "alternate"));
+        fireChance = Double.parseDouble(options.getOrDefault("fire", "0.1"));
+        rampUp = Long.parseLong(options.getOrDefault("rampUp", "5")) * 1_000_000L;
+        lineFraming = !"raw".equals(options.getOrDefault("framing", PongServer.TEXT_FRAMING == Framing.RAW ? "raw" : "line"));
+        port = Integer.parseInt(options.getOrDefault("port", String.valueOf(PongServer.TEXT_PORT)));
+        reportFile = options.getOrDefault("report", "load-report.txt");
+        random = new Random(Long.parseLong(options.getOrDefault("seed", "1")));
+    }
+
+    /**
+     * Values in nanoseconds, kept in full so that exact percentiles can be taken at the end.
+     */
+    private static final class Samples {
+
+        private long[] values = new long[1024];
+        private int size = 0;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        double mean() {
+            double sum = 0;
+
+            for (int i = 0; i < size; i++) {
+                sum += values[i];
+            }
+
+            return size == 0 ? 0 : sum / size;
+        }
+
+        // mean absolute deviation from the mean
+        double jitter() {
+            double mean = mean();
+            double sum = 0;
+
+            for (int i = 0; i < size; i++) {
+                sum += Math.abs(values[i] - mean);
+            }
+
+            return size == 0 ? 0 : sum / size;
+        }
+
+        long percentile(double p) {
+            if (size == 0)
+                return 0;
+
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min(size - 1, (int) Math.ceil(p / 100 * size) - 1)];
+        }
+    }
+
+    private final class Bot {
+
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+        private final StringBuilder line = new StringBuilder();
+        private final Queue<ByteBuffer> outbound = new ArrayDeque<>();
+
+        private SelectionKey key;
+
+        // -1 until the server has given this bot a player slot
+        private int player = -1;
+        private String suffix;
+
+        private int direction = 0;
+        private long nextInput;
+
+        private double batX = Double.NaN;
+        private long lastSnapshot = 0;
+
+        // the direction press being timed, if any
+        private int pendingDirection = 0;
+        private long pendingSince;
+        private double pendingFromX;
+
+        Bot(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void onRead(long now) throws IOException {
+            readBuffer.clear();
+            int n = channel.read(readBuffer);
+
+            if (n < 0) {
+                close();
+                return;
+            }
+
+            readBuffer.flip();
+            var text = StandardCharsets.US_ASCII.decode(readBuffer);
+
+            if (!lineFraming) {
+                onUnframed(text, now);
+                return;
+            }
+
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+
+                if (c == '\n') {
+                    onMessage(line.toString(), now);
+                    line.setLength(0);
+                } else {
+                    line.append(c);
+                }
+            }
+
+            // a server without framing never sends a delimiter, so nothing would ever be measured
+            if (line.length() > FrameDecoder.MAX_FRAME_SIZE)
+                throw new IllegalStateException("No line delimiter in " + line.length() + " bytes from the server, "
+                        + "run with framing=raw if the server uses -Dpong.textFraming=raw");
+        }
+
+        // a read can hold several messages, which are split where a known message starts
+        private void onUnframed(CharSequence text, long now) {
+            int start = 0;
+
+            for (int i = 1; i < text.length(); i++) {
+                if (startsMessage(text, i)) {
+                    onMessage(text.subSequence(start, i).toString(), now);
+                    start = i;
+                }
+            }
+
+            onMessage(text.subSequence(start, text.length()).toString(), now);
+        }
+
+        private boolean startsMessage(CharSequence text, int i) {
+            for (String prefix : MESSAGE_STARTS) {
+                if (text.length() - i >= prefix.length() && text.subSequence(i, i + prefix.length()).toString().equals(prefix))
+                    return true;
+            }
+
+            return false;
+        }
+
+        private void onMessage(String message, long now) {
+            if (message.startsWith(NetworkMessages.PLAYER1_CONNECT)) {
+                start(Snapshot.PLAYER1, now);
+            } else if (message.startsWith(NetworkMessages.PLAYER2_CONNECT)) {
+                start(Snapshot.PLAYER2, now);
+            } else if (message.startsWith("GAME_DATA,")) {
+                onSnapshot(message, now);
+            } else if (message.startsWith(NetworkMessages.PING + ",")) {
+                // answered straight away, with the wall clock of the bot in microseconds
+                send(NetworkMessages.PONG + message.substring(NetworkMessages.PING.length()) + "," + System.currentTimeMillis() * 1000);
+            }
+        }
+
+        private void start(int player, long now) {
+            this.player = player;
+            suffix = player == Snapshot.PLAYER1 ? "_PLAYER" : "_ENEMY";
+            nextInput = now + (long) (random.nextDouble() * 1_000_000_000L / rate);
+        }
+
+        private void onSnapshot(String message, long now) {
+            snapshots++;
+
+            if (lastSnapshot != 0) {
+                intervals.add(now - lastSnapshot);
+            }
+
+            lastSnapshot = now;
+
+            if (player < 0)
+                return;
+
+            // GAME_DATA,bat1X,bat2X,...
+            int start = message.indexOf(',') + 1;
+
+            if (player == Snapshot.PLAYER2) {
+                start = message.indexOf(',', start) + 1;
+            }
+
+            int end = message.indexOf(',', start);
+
+            // without framing, TCP can cut a snapshot short at the end of a read
+            if (start == 0 || end < 0)
+                return;
+
+            batX = Double.parseDouble(message.substring(start, end));
+
+            if (pendingDirection != 0 && Math.signum(batX - pendingFromX) == pendingDirection) {
+                latencies.add(now - pendingSince);
+                pendingDirection = 0;
+            }
+        }
+
+        void update(long now) {
+            if (player < 0)
+                return;
+
+            if (pendingDirection != 0 && now - pendingSince > TIMEOUT_NANOS) {
+                timeouts++;
+                pendingDirection = 0;
+            }
+
+            if (now < nextInput)
+                return;
+
+            nextInput += (long) (1_000_000_000L / rate);
+
+            int newDirection = alternate
+                    ? (direction <= 0 ? 1 : -1)
+                    : random.nextInt(3) - 1;
+
+            var message = new StringBuilder("bot");
+
+            if (direction != 0) {
+                message.append(',').append(direction < 0 ? 'A' : 'D').append(suffix).append("UP");
+            }
+
+            if (newDirection != 0) {
+                message.append(',').append(newDirection < 0 ? 'A' : 'D').append(suffix).append("DOWN");
+
+                // only timed from a known position and when not already waiting for a previous press
+                if (pendingDirection == 0 && !Double.isNaN(batX)) {
+                    pendingDirection = newDirection;
+                    pendingSince = now;
+                    pendingFromX = batX;
+                }
+            }
+
+            if (random.nextDouble() < fireChance) {
+                message.append(",W").append(suffix).append("DOWN,W").append(suffix).append("UP");
+            }
+
+            direction = newDirection;
+            inputs++;
+            send(message.toString());
+        }
+
+        void quit() {
+            if (player >= 0) {
+                send("bot," + (player == Snapshot.PLAYER1 ? "PLAYERQUIT" : "ENEMYQUIT"));
+            }
+        }
+
+        void send(String message) {
+            if (lineFraming) {
+                message += "\n";
+            }
+
+            outbound.add(ByteBuffer.wrap(message.getBytes(StandardCharsets.US_ASCII)));
+            onWritable();
+        }
+
+        void onWritable() {
+            try {
+                while (!outbound.isEmpty()) {
+                    ByteBuffer buffer = outbound.peek();
+                    channel.write(buffer);
+
+                    if (buffer.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+
+                    outbound.poll();
+                }
+
+                key.interestOps(SelectionKey.OP_READ);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            key.cancel();
+
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    public void run() throws IOException {
+        var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+
+        try (Selector selector = Selector.open()) {
+            long now = System.nanoTime();
+            long nextConnect = now;
+            long end = Long.MAX_VALUE;
+
+            while (now < end) {
+                if (bots.size() + connectFailures < numClients && now >= nextConnect) {
+                    connect(selector, address);
+                    nextConnect = now + rampUp;
+
+                    if (bots.size() + connectFailures == numClients) {
+                        end = now + duration;
+                    }
+                }
+
+                selector.select(1);
+                now = System.nanoTime();
+
+                for (var key : selector.selectedKeys()) {
+                    var bot = (Bot) key.attachment();
+
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            bot.onRead(now);
+                        }
+
+                        if (key.isValid() && key.isWritable()) {
+                            bot.onWritable();
+                        }
+                    } catch (IOException e) {
+                        bot.close();
+                    }
+                }
+
+                selector.selectedKeys().clear();
+
+                for (var bot : bots) {
+                    if (bot.key.isValid()) {
+                        bot.update(now);
+                    }
+                }
+            }
+
+            for (var bot : bots) {
+                if (bot.key.isValid()) {
+                    bot.quit();
+                }
+            }
+
+            // give the quit messages a moment to be written before the connections close
+            long quitDeadline = System.nanoTime() + 500_000_000L;
+            while (System.nanoTime() < quitDeadline) {
+                selector.select(10);
+                selector.selectedKeys().clear();
+            }
+
+            for (var bot : bots) {
+                bot.close();
+            }
+        }
+
+        writeReport();
+    }
+
+    private void connect(Selector selector, InetSocketAddress address) {
+        try {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            var bot = new Bot(channel);
+            bot.key = channel.register(selector, SelectionKey.OP_READ, bot);
+            bots.add(bot);
+        } catch (IOException e) {
+            connectFailures++;
+        }
+    }
+
+    private void writeReport() throws IOException {
+        long players = bots.stream().filter(bot -> bot.player >= 0).count();
+
+        try (var out = new PrintWriter(Files.newBufferedWriter(Paths.get(reportFile)))) {
+            out.printf("clients: %d connected, %d failed, %d got a player slot%n", bots.size(), connectFailures, players);
+            out.printf("inputs sent: %d, snapshots received: %d%n", inputs, snapshots);
+            out.printf("input to snapshot latency (ms): n=%d mean=%.2f p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f, timeouts=%d%n",
+                    latencies.size(), latencies.mean() / 1e6,
+                    latencies.percentile(50) / 1e6, latencies.percentile(90) / 1e6,
+                    latencies.percentile(99) / 1e6, latencies.percentile(99.9) / 1e6,
+                    latencies.percentile(100) / 1e6, timeouts);
+            out.printf("snapshot interval (ms): n=%d mean=%.2f p50=%.2f p99=%.2f max=%.2f, jitter=%.2f%n",
+                    intervals.size(), intervals.mean() / 1e6,
+                    intervals.percentile(50) / 1e6, intervals.percentile(99) / 1e6,
+                    intervals.percentile(100) / 1e6, intervals.jitter() / 1e6);
+        }
+
+        System.out.print(new String(Files.readAllBytes(Paths.get(reportFile)), StandardCharsets.UTF_8));
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+
+            if (i < 0)
+                throw new IllegalArgumentException("Expected option=value but got " + arg);
+
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+
+        new LoadGenerator(options).run();
+    }
+}
@@ -0,0 +1,77 @@
+package com.almasb.fxglgames.pong;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the text message writer and reader of the FXGL transport over in-memory streams.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageStreamBenchmark {
+
+    private static final String MESSAGE = "GAME_DATA,396.5,400.0,0,0,1,0,443.0,443.3333333333333";
+
+    // encoded once, as for a broadcast
+    private static final Frame FRAME = Frame.wrap(MESSAGE.getBytes(StandardCharsets.US_ASCII));
+
+    /**
+     * Returns the same message on every read, like a client sending one message per packet.
+     */
+    private static class RepeatingInputStream extends InputStream {
+
+        private final byte[] message;
+
+        // next byte of the message, reads stop at its end so that every message starts a read
+        private int position = 0;
+
+        RepeatingInputStream(String message) {
+            this.message = (PongServer.TEXT_FRAMING == Framing.LINE ? message + "\n" : message).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public int read() {
+            int b = message[position] & 0xFF;
+            position = (position + 1) % message.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+
+            int n = Math.min(len, message.length - position);
+            System.arraycopy(message, position, b, off, n);
+            position = (position + n) % message.length;
+            return n;
+        }
+    }
+
+    private PongServer.MessageWriterS writer;
+    private PongServer.MessageReaderS reader;
+
+    @Setup
+    public void setUp() {
+        writer = new PongServer.MessageWriterS(OutputStream.nullOutputStream());
+        reader = new PongServer.MessageReaderS(new RepeatingInputStream(MESSAGE));
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+        writer.write(FRAME);
+    }
+
+    @Benchmark
+    public Frame read() throws Exception {
+        return reader.read();
+    }
+}
@@ -0,0 +1,58 @@
+package com.almasb.fxglgames.pong;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A match tick with many balls per tank in flight, to check that its cost grows linearly with the number of balls.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProjectileBenchmark {
+
+    private static final double DT = 1.0 / 60;
+
+    @Param({ "1", "16", "64", "256" })
+    private int bulletsPerTank;
+
+    private Match match;
+
+    @Setup
+    public void setUp() {
+        match = new Match(event -> { }, bulletsPerTank);
+        match.left(Snapshot.PLAYER1);
+        match.right(Snapshot.PLAYER2);
+
+        // spread the balls out, one per player per tick
+        for (int i = 0; i < 4 * bulletsPerTank; i++) {
+            fire();
+            match.step(DT);
+        }
+    }
+
+    // bats sweep from side to side so balls leave the firing position, balls that scored are replaced
+    private void fire() {
+        match.fire(Snapshot.PLAYER1);
+        match.fire(Snapshot.PLAYER2);
+
+        for (int player = 0; player < 2; player++) {
+            if (match.getBatX(player) < 10) {
+                match.right(player);
+            } else if (match.getBatX(player) > Match.WIDTH - Match.BAT_SIZE - 10) {
+                match.left(player);
+            }
+        }
+    }
+
+    @Benchmark
+    public Projectiles tick() {
+        fire();
+        match.step(DT);
+        return match.getBalls();
+    }
+}
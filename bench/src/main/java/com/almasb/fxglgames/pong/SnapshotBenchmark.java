@@ -0,0 +1,63 @@
+package com.almasb.fxglgames.pong;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capturing and encoding a snapshot in each wire format, as done once per snapshot tick.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+
+    private final Snapshot baseline = new Snapshot();
+    private final Snapshot snapshot = new Snapshot();
+    private final ByteBuffer buffer = ByteBuffer.allocate(SnapshotCodec.MAX_SNAPSHOT_SIZE);
+
+    private double x = 0;
+
+    @Setup
+    public void setUp() {
+        capture();
+        baseline.copyFrom(snapshot);
+    }
+
+    // the same fields PongApp.captureSnapshot fills, moving a little every call
+    private void capture() {
+        x = x > 700 ? 0 : x + 3.5;
+
+        snapshot.setSequence(snapshot.getSequence() + 1);
+        snapshot.setBatX(Snapshot.PLAYER1, x);
+        snapshot.setBatX(Snapshot.PLAYER2, 700 - x);
+        snapshot.setScore(Snapshot.PLAYER1, 3);
+        snapshot.setScore(Snapshot.PLAYER2, 5);
+        snapshot.setBall(Snapshot.PLAYER1, x + 43, 443.3);
+        snapshot.setBall(Snapshot.PLAYER2, 743 - x, 140.6);
+    }
+
+    @Benchmark
+    public String text() {
+        capture();
+        return SnapshotCodec.toText(snapshot);
+    }
+
+    @Benchmark
+    public ByteBuffer keyframe() {
+        capture();
+        buffer.clear();
+        SnapshotCodec.encode(snapshot, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public byte[] delta() {
+        capture();
+        return SnapshotCodec.encodeDelta(baseline, snapshot);
+    }
+}
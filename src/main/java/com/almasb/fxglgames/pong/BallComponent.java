@@ -41,8 +41,11 @@ public class BallComponent extends Component {
 
     private PhysicsComponent physics;
 
-    @Override
-    public void onUpdate(double tpf) {
+    /**
+     * Called by the fixed-rate simulation tick to correct the velocity,
+     * which Box2D still integrates once per rendered frame.
+     */
+    public void tick(double dt) {
         limitVelocity();
         checkOffscreen();
     }
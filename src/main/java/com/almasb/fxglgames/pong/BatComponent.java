@@ -30,21 +30,27 @@ import com.almasb.fxgl.dsl.FXGL;
 import com.almasb.fxgl.entity.Entity;
 import com.almasb.fxgl.entity.component.Component;
 import com.almasb.fxgl.physics.PhysicsComponent;
-
-import static com.almasb.fxgl.dsl.FXGL.spawn;
+import javafx.geometry.Point2D;
 
 /**
  * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
  */
 public class BatComponent extends Component {
 
-    private static final double BAT_SPEED = 210;
+    private static final double BAT_SPEED = Match.BAT_SPEED;
+
+    private final PongFactory.BulletPool bullets;
 
     protected PhysicsComponent physics;
     protected Entity ball;
     protected int firingOffsetY;
     protected int firingOffsetX;
     protected double firingVelocityY;
+    protected int direction;
+
+    public BatComponent(PongFactory.BulletPool bullets) {
+        this.bullets = bullets;
+    }
 
     /**
      * Player bat.
@@ -53,30 +59,46 @@ public class BatComponent extends Component {
      * E.R.Walker (E.walker5@uni.brighton.ac.uk)
      */
     public void left(){
-        if(entity.getX() >= BAT_SPEED / 60)
-            physics.setVelocityX(-BAT_SPEED);
-        else
-            stop();
+        direction = -1;
     }
 
     public void right(){
-        if(entity.getRightX() <= FXGL.getAppWidth() - (BAT_SPEED / 60))
-            physics.setVelocityX(BAT_SPEED);
-        else
-            stop();
+        direction = 1;
     }
 
     public void stop() {
+        direction = 0;
         physics.setLinearVelocity(0, 0);
     }
 
+    /**
+     * Moves the bat in the requested direction until it reaches the edge of the screen.
+     * Called once per simulation tick, so the edge check uses the fixed tick dt,
+     * but Box2D integrates the velocity once per rendered frame.
+     */
+    public void tick(double dt) {
+        if (direction < 0 && entity.getX() >= BAT_SPEED * dt)
+            physics.setVelocityX(-BAT_SPEED);
+        else if (direction > 0 && entity.getRightX() <= FXGL.getAppWidth() - BAT_SPEED * dt)
+            physics.setVelocityX(BAT_SPEED);
+        else
+            physics.setLinearVelocity(0, 0);
+    }
+
+    /**
+     * Places the bat at the given x, for when the position is simulated elsewhere, see {@link PongApp#SWEPT_PHYSICS}.
+     */
+    public void moveTo(double x) {
+        physics.overwritePosition(new Point2D(x, entity.getY()));
+    }
+
     public void reload(){
         ball = null;
     }
 
     public void fire(){
         if(ball == null){
-            ball = spawn("ball",
+            ball = bullets.acquire(
                     (this.physics.getEntity().getX() + firingOffsetX),
                     (this.physics.getEntity().getY() + firingOffsetY));
             ball.getComponent(BallComponent.class).initVelocity(firingVelocityY);
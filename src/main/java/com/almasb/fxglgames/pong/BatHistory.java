@@ -0,0 +1,64 @@
+package com.almasb.fxglgames.pong;
+
+/**
+ * Positions of both bats over the last ticks, so that a hit can be judged against where a bat was
+ * when the shooter saw it rather than where it is now.
+ *
+ * The history is a ring of one slot per tick in a single preallocated array, with both bats of a tick
+ * next to each other. Recording and looking up a position take constant time and allocate nothing.
+ */
+public class BatHistory {
+
+    private final int capacity;
+    private final double[] batX;
+
+    // slot of the newest tick, and number of ticks recorded up to the capacity
+    private int newest = -1;
+    private int size = 0;
+
+    /**
+     * @param maxTicksAgo furthest back a position can be looked up
+     */
+    public BatHistory(int maxTicksAgo) {
+        capacity = maxTicksAgo + 1;
+        batX = new double[2 * capacity];
+    }
+
+    /**
+     * Records the positions of the bats after a tick, replacing the oldest tick once the history is full.
+     */
+    public void record(double bat1X, double bat2X) {
+        newest = newest + 1 == capacity ? 0 : newest + 1;
+        size = Math.min(size + 1, capacity);
+
+        batX[2 * newest] = bat1X;
+        batX[2 * newest + 1] = bat2X;
+    }
+
+    /**
+     * @param ticksAgo 0 for the newest tick, limited to the oldest tick recorded
+     * @return x of the player's bat at that tick
+     * @throws IllegalStateException if nothing has been recorded
+     */
+    public double getX(int player, int ticksAgo) {
+        if (size == 0)
+            throw new IllegalStateException("No bat positions recorded");
+
+        int slot = newest - Math.min(ticksAgo, size - 1);
+
+        if (slot < 0) {
+            slot += capacity;
+        }
+
+        return batX[2 * slot + player];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        newest = -1;
+        size = 0;
+    }
+}
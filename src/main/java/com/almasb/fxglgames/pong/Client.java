@@ -0,0 +1,356 @@
+package com.almasb.fxglgames.pong;
+
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A connected client in either wire format.
+ * A client plays in the player slot it was given by its {@link ClientGroup}, or watches if it has none.
+ */
+public abstract class Client implements CommandDecoder.CommandHandler {
+
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+
+    static final Metrics.Counter BYTES_IN = Metrics.counter("pong_bytes_in_total", "Bytes of messages received from clients");
+    static final Metrics.Counter BYTES_OUT = Metrics.counter("pong_bytes_out_total", "Bytes of messages written to clients");
+    static final Metrics.Counter MESSAGES_IN = Metrics.counter("pong_messages_in_total", "Messages received from clients");
+    static final Metrics.Counter MESSAGES_OUT = Metrics.counter("pong_messages_out_total", "Messages written to clients");
+    static final Metrics.Counter DUPLICATE_INPUTS = Metrics.counter("pong_inputs_duplicate_total", "Input messages ignored because their sequence number was not newer than the last one");
+    static final Metrics.Counter MISSING_INPUTS = Metrics.counter("pong_inputs_missing_total", "Input messages never received, going by gaps in the sequence numbers");
+
+    /**
+     * A metric family with one sample per client, labelled with the client id.
+     */
+    private static final class ConnectionMetric {
+        final String name;
+        final String help;
+        final String type;
+        final ToDoubleFunction<Client> value;
+
+        ConnectionMetric(String name, String help, String type, ToDoubleFunction<Client> value) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    private static final List<ConnectionMetric> CONNECTION_METRICS = List.of(
+            new ConnectionMetric("pong_connection_bytes_in_total", "Bytes of messages received from each client", "counter", client -> client.bytesIn.get()),
+            new ConnectionMetric("pong_connection_bytes_out_total", "Bytes of messages written to each client", "counter", client -> client.bytesOut.get()),
+            new ConnectionMetric("pong_connection_messages_in_total", "Messages received from each client", "counter", client -> client.messagesIn.get()),
+            new ConnectionMetric("pong_connection_messages_out_total", "Messages written to each client", "counter", client -> client.messagesOut.get()),
+            new ConnectionMetric("pong_connection_duplicate_inputs_total", "Input messages of each client ignored as duplicates", "counter", client -> client.duplicateInputs.get()),
+            new ConnectionMetric("pong_connection_missing_inputs_total", "Input messages of each client never received", "counter", client -> client.missingInputs.get()),
+            new ConnectionMetric("pong_connection_rtt_seconds", "Smoothed round trip time of each client, 0 until a ping is answered", "gauge", client -> client.rtt.getRtt() / 1_000_000.0),
+            new ConnectionMetric("pong_connection_rtt_jitter_seconds", "Smoothed deviation of the round trip time of each client", "gauge", client -> client.rtt.getJitter() / 1_000_000.0),
+            new ConnectionMetric("pong_connection_clock_offset_seconds", "Offset of the clock of each client from the server clock", "gauge", client -> client.rtt.getClockOffset() / 1_000_000.0),
+            new ConnectionMetric("pong_connection_snapshot_rate", "Snapshots per second each client is sent", "gauge", client -> client.snapshotRate.getRate()),
+            new ConnectionMetric("pong_connection_drain_bytes_per_second", "Smoothed bytes per second written to each client", "gauge", client -> client.snapshotRate.getThroughput()),
+            new ConnectionMetric("pong_connection_pending_events", "Events queued for each client but not yet written", "gauge", client -> client.getOutbox().getPendingEvents()),
+            new ConnectionMetric("pong_connection_dropped_events_total", "Events not sent to each client because it was lagging", "counter", client -> client.getOutbox().getDroppedEvents()),
+            new ConnectionMetric("pong_connection_dropped_snapshots_total", "Snapshots replaced by a newer one before they were written to each client", "counter", client -> client.getOutbox().getDroppedSnapshots())
+    );
+
+    private final int id = nextId.getAndIncrement();
+
+    private final Metrics.Counter bytesIn = new Metrics.Counter();
+    private final Metrics.Counter bytesOut = new Metrics.Counter();
+    private final Metrics.Counter messagesIn = new Metrics.Counter();
+    private final Metrics.Counter messagesOut = new Metrics.Counter();
+    private final Metrics.Counter duplicateInputs = new Metrics.Counter();
+    private final Metrics.Counter missingInputs = new Metrics.Counter();
+
+    // only touched by the thread reading from this client, -1 until a numbered message arrives
+    private int inputSequence = -1;
+
+    private final RttEstimator rtt = new RttEstimator();
+    private final SnapshotRate snapshotRate = new SnapshotRate();
+
+    private volatile ClientGroup group;
+    private volatile int player = -1;
+
+    private volatile Lobby lobby;
+
+    // whether the client has been handed to the lobby, or has resumed or disconnected before that, guarded by this
+    private boolean matched = false;
+
+    private volatile UdpChannel udp;
+    private volatile SocketAddress udpAddress;
+
+    /**
+     * @return number identifying the client in the metrics
+     */
+    public int getId() {
+        return id;
+    }
+
+    void recordReceived(int bytes) {
+        bytesIn.add(bytes);
+        messagesIn.increment();
+        BYTES_IN.add(bytes);
+        MESSAGES_IN.increment();
+    }
+
+    void recordSent(int messages, int bytes) {
+        bytesOut.add(bytes);
+        messagesOut.add(messages);
+        BYTES_OUT.add(bytes);
+        MESSAGES_OUT.add(messages);
+    }
+
+    /**
+     * Writes the traffic, round trip time and queue depth of the clients, one metric family at a time
+     * with a sample per client labelled with its id.
+     */
+    static void collectMetrics(StringBuilder out, Collection<Client> clients) {
+        if (clients.isEmpty())
+            return;
+
+        // the same clients in every family, even if some connect or disconnect meanwhile
+        var snapshot = List.copyOf(clients);
+
+        for (var metric : CONNECTION_METRICS) {
+            Metrics.writeHeader(out, metric.name, metric.help, metric.type);
+
+            for (var client : snapshot) {
+                double value = metric.value.applyAsDouble(client);
+
+                out.append(metric.name).append("{client=\"").append(client.id).append("\"} ");
+
+                if (value == (long) value) {
+                    out.append((long) value);
+                } else {
+                    out.append(value);
+                }
+
+                out.append('\n');
+            }
+        }
+    }
+
+    public ClientGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * @return player slot of this client, or -1 if it is not playing
+     */
+    public int getPlayer() {
+        return player;
+    }
+
+    void join(ClientGroup group, int player) {
+        this.group = group;
+        this.player = player;
+    }
+
+    void bindLobby(Lobby lobby) {
+        this.lobby = lobby;
+    }
+
+    /**
+     * Hands the client to the lobby to be given a slot, unless it has already resumed one or disconnected.
+     */
+    synchronized void match() {
+        if (matched)
+            return;
+
+        matched = true;
+        lobby.onConnected(this);
+    }
+
+    /**
+     * Tells the lobby that the client has disconnected, if it was ever handed to it.
+     */
+    synchronized void leaveLobby() {
+        if (matched) {
+            lobby.onDisconnected(this);
+        }
+
+        matched = true;
+    }
+
+    void bindDatagrams(UdpChannel udp, SocketAddress address) {
+        this.udp = udp;
+        this.udpAddress = address;
+    }
+
+    /**
+     * Sends the snapshot as a datagram, if the client has bound a UDP address.
+     *
+     * @return false if the snapshot has to be sent over the connection instead
+     */
+    boolean sendDatagram(EncodedSnapshot snapshot) {
+        var address = udpAddress;
+
+        if (address == null)
+            return false;
+
+        udp.send(address, snapshot.getKeyframe());
+        return true;
+    }
+
+    /**
+     * @return snapshots per second this client is currently sent over its connection
+     */
+    public double getSnapshotRate() {
+        return snapshotRate.getRate();
+    }
+
+    /**
+     * Decides whether the snapshot being sent to the group goes to this client, by how fast its connection drains.
+     */
+    boolean isSnapshotDue(long now) {
+        return snapshotRate.onSnapshot(now, bytesOut.get(), getOutbox().hasPendingSnapshot());
+    }
+
+    /**
+     * @return round trip time, jitter and clock offset of this client's connection
+     */
+    public RttEstimator getRtt() {
+        return rtt;
+    }
+
+    /**
+     * Sends a ping if the last one was sent at least {@link RttEstimator#PING_INTERVAL_MS} ago.
+     * Pings are only queued here, so they go out with the events of the tick rather than in a write of their own.
+     */
+    void ping(long now) {
+        String ping = rtt.nextPing(now);
+
+        if (ping != null) {
+            send(ping);
+        }
+    }
+
+    /**
+     * Stamped on the reading thread as soon as it is decoded, so that the game loop does not add to the round trip time.
+     */
+    @Override
+    public void onPong(long serverTime, long clientTime) {
+        rtt.onPong(serverTime, clientTime, RttEstimator.now());
+    }
+
+    /**
+     * A command from this client arrives about one round trip after the snapshot it was sent in response to,
+     * so that is how far the client's view lags behind the server.
+     *
+     * @return estimated seconds by which the client's view of the match lags behind the server, 0 if unknown
+     */
+    public double getViewDelay() {
+        return rtt.getRtt() / 1_000_000.0;
+    }
+
+    void leave() {
+        this.group = null;
+        this.player = -1;
+    }
+
+    /**
+     * Accepts a numbered message only if it is newer than the last one, so that a message resent
+     * by the client is applied once. A gap in the numbers counts the messages in between as missing.
+     */
+    @Override
+    public boolean onSequence(int sequence) {
+        if (sequence <= inputSequence) {
+            duplicateInputs.increment();
+            DUPLICATE_INPUTS.increment();
+            return false;
+        }
+
+        if (inputSequence >= 0 && sequence > inputSequence + 1) {
+            missingInputs.add(sequence - inputSequence - 1);
+            MISSING_INPUTS.add(sequence - inputSequence - 1);
+        }
+
+        inputSequence = sequence;
+        return true;
+    }
+
+    /**
+     * Records a decoded command in the input of the client's group, on the calling network thread,
+     * together with the number of the latest message from this client so that snapshots can acknowledge it.
+     * A client only controls the bat of its own slot, commands for the other bat are ignored.
+     */
+    @Override
+    public void onCommand(int player, Command command) {
+        var group = this.group;
+
+        if (group == null)
+            return;
+
+        if (command == Command.QUIT) {
+            group.execute(this::quit);
+        } else if (player == this.player) {
+            group.getInput().record(player, command, inputSequence);
+        }
+    }
+
+    /**
+     * Passes the request to take back a player slot to the lobby, which knows the groups that may hold it.
+     * A client that resumes before it is matched is never given a free slot, unless its token is not accepted.
+     */
+    @Override
+    public synchronized void onResume(long token) {
+        var lobby = this.lobby;
+
+        if (lobby == null)
+            return;
+
+        boolean unmatched = !matched;
+        matched = true;
+
+        lobby.onResume(this, token);
+
+        if (unmatched && group == null) {
+            lobby.onConnected(this);
+        }
+    }
+
+    // a player that quits does not come back, so its slot is not held
+    private void quit() {
+        int player = this.player;
+        var group = this.group;
+
+        if (group != null) {
+            group.release(this);
+        }
+
+        if (player >= 0) {
+            send(player == Snapshot.PLAYER1 ? NetworkMessages.PLAYER1_QUIT : NetworkMessages.PLAYER2_QUIT);
+            System.out.println("Player " + (player + 1) + " Quit.");
+        }
+
+        terminate();
+    }
+
+    /**
+     * Sends an event message, e.g. {@link NetworkMessages#HIT_WALL_UP}.
+     */
+    public void send(String message) {
+        send(new EncodedEvent(message));
+    }
+
+    /**
+     * Sends an event in the format of this client's connection, sharing the encoded bytes with other recipients.
+     */
+    abstract void send(EncodedEvent event);
+
+    abstract void sendSnapshot(EncodedSnapshot snapshot);
+
+    /**
+     * @return the queue of messages waiting to be written to this client
+     */
+    public abstract Outbox<?> getOutbox();
+
+    /**
+     * Closes the connection once the events sent so far have been written.
+     */
+    public void terminate() {
+        getOutbox().close();
+    }
+}
@@ -0,0 +1,302 @@
+package com.almasb.fxglgames.pong;
+
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Clients that play or watch the same match. The first two clients to join get the
+ * two player slots, later clients only receive events and snapshots.
+ * Input from the players is recorded in the group's {@link InputBuffer},
+ * other callbacks are passed to the listener through the group's executor.
+ *
+ * Each player is given a resume token with its slot. When a player disconnects, its slot is held for
+ * {@link #RESUME_GRACE_MS}, and a client that presents the token in that time takes the slot back
+ * along with the bat and score that came with it.
+ */
+public class ClientGroup {
+
+    /**
+     * How long the slot of a disconnected player is held for it to resume, can be overridden with the
+     * pong.resumeGraceMs system property (0 frees the slot at once and sends no tokens).
+     */
+    public static final int RESUME_GRACE_MS = Integer.getInteger("pong.resumeGraceMs", 10000);
+
+    private static final Metrics.Counter RESUMES = Metrics.counter("pong_resumes_total", "Players that took their slot back with a resume token");
+
+    private static final SecureRandom tokens = new SecureRandom();
+
+    private final PongServer.Listener listener;
+    private final Executor executor;
+    private final boolean spectators;
+
+    private final Client[] players = new Client[2];
+
+    // token of each slot (0 if none), and whether and until when (System.nanoTime) the slot of a disconnected player is held
+    private final long[] resumeTokens = new long[2];
+    private final boolean[] held = new boolean[2];
+    private final long[] heldUntil = new long[2];
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+
+    private final InputBuffer input = new InputBuffer();
+    private final EncodedSnapshot encoded = new EncodedSnapshot();
+
+    /**
+     * @param executor runs the listener callbacks, e.g. on the thread that owns the game state
+     * @param spectators whether clients may join once both player slots are taken
+     */
+    public ClientGroup(PongServer.Listener listener, Executor executor, boolean spectators) {
+        this.listener = listener;
+        this.executor = executor;
+        this.spectators = spectators;
+    }
+
+    PongServer.Listener getListener() {
+        return listener;
+    }
+
+    public InputBuffer getInput() {
+        return input;
+    }
+
+    void execute(Runnable action) {
+        executor.execute(action);
+    }
+
+    /**
+     * Adds the client to the group and gives it a free player slot, if there is one.
+     *
+     * @return false if the group is full and does not take spectators
+     */
+    public synchronized boolean join(Client client) {
+        int player = isFree(0) ? 0 : isFree(1) ? 1 : -1;
+
+        if (player < 0 && !spectators)
+            return false;
+
+        clients.add(client);
+        client.join(this, player);
+
+        long token = player >= 0 ? takeSlot(player, client) : 0;
+        int numClients = clients.size();
+
+        // sent through the executor so that these messages are not written concurrently with snapshots
+        executor.execute(() -> {
+            broadcast("Number of players connected is now: " + numClients);
+
+            if (player >= 0) {
+                client.send(connectMessage(player, token));
+                listener.onPlayerConnected(player);
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Removes a client that has disconnected. A player's slot is held for {@link #RESUME_GRACE_MS}.
+     */
+    public synchronized void leave(Client client) {
+        remove(client, RESUME_GRACE_MS > 0);
+    }
+
+    /**
+     * Removes a client and frees its slot at once, e.g. because the player has quit.
+     */
+    public synchronized void release(Client client) {
+        remove(client, false);
+    }
+
+    private void remove(Client client, boolean hold) {
+        clients.remove(client);
+
+        int player = client.getPlayer();
+        if (player >= 0 && players[player] == client) {
+            players[player] = null;
+            input.clear(player);
+
+            held[player] = hold;
+            heldUntil[player] = System.nanoTime() + RESUME_GRACE_MS * 1_000_000L;
+
+            if (!hold) {
+                resumeTokens[player] = 0;
+            }
+        }
+
+        client.leave();
+    }
+
+    /**
+     * @return true if the token was issued for a slot that is held, or still taken by a connection
+     *         that has not been noticed to be dead yet
+     */
+    public synchronized boolean canResume(long token) {
+        return findSlot(token) >= 0;
+    }
+
+    /**
+     * Gives the client the slot the token was issued for, with a new token. The connection still in the slot, if any,
+     * is closed. If snapshots were still being sent to the group, the client is sent the last one straight away,
+     * as a keyframe, rather than waiting for the next one (which would be a keyframe too, as the new connection has no baseline).
+     * A client that has joined this group since it connected gives up the place it was given.
+     *
+     * @return false if the token is unknown or its slot is no longer held
+     */
+    public synchronized boolean resume(Client client, long token) {
+        int player = findSlot(token);
+
+        if (player < 0)
+            return false;
+
+        // an empty group has not been sent snapshots, so the last one may be old
+        boolean snapshotCurrent = !clients.isEmpty();
+
+        if (client.getGroup() == this) {
+            remove(client, false);
+        }
+
+        var previous = players[player];
+
+        if (previous != null) {
+            remove(previous, false);
+            previous.terminate();
+        }
+
+        clients.add(client);
+        client.join(this, player);
+
+        long newToken = takeSlot(player, client);
+        RESUMES.increment();
+
+        executor.execute(() -> {
+            client.send(connectMessage(player, newToken));
+
+            if (snapshotCurrent && encoded.getSnapshot() != null) {
+                client.sendSnapshot(encoded);
+            }
+
+            listener.onPlayerResumed(player);
+        });
+
+        return true;
+    }
+
+    // a token is only valid for the slot it was issued for, while the slot is taken or held
+    private int findSlot(long token) {
+        for (int player = 0; player < 2; player++) {
+            if (token != 0 && resumeTokens[player] == token && (players[player] != null || isHeld(player)))
+                return player;
+        }
+
+        return -1;
+    }
+
+    private long takeSlot(int player, Client client) {
+        players[player] = client;
+        held[player] = false;
+
+        long token = 0;
+
+        while (RESUME_GRACE_MS > 0 && token == 0) {
+            token = tokens.nextLong() & Long.MAX_VALUE;
+        }
+
+        resumeTokens[player] = token;
+        return token;
+    }
+
+    private static String connectMessage(int player, long token) {
+        String message = player == Snapshot.PLAYER1 ? NetworkMessages.PLAYER1_CONNECT : NetworkMessages.PLAYER2_CONNECT;
+        return token != 0 ? message + "," + token : message;
+    }
+
+    private boolean isHeld(int player) {
+        return held[player] && System.nanoTime() - heldUntil[player] < 0;
+    }
+
+    private boolean isFree(int player) {
+        return players[player] == null && !isHeld(player);
+    }
+
+    /**
+     * @return true if the slot of a disconnected player is being held for it to resume
+     */
+    public synchronized boolean hasHeldSlots() {
+        return (players[0] == null && isHeld(0)) || (players[1] == null && isHeld(1));
+    }
+
+    /**
+     * @return round trip time of the player in the given slot, or null if the slot is free
+     */
+    public synchronized RttEstimator getRtt(int player) {
+        var client = players[player];
+        return client != null ? client.getRtt() : null;
+    }
+
+    /**
+     * @return estimated seconds by which the view of the player in the given slot lags behind, 0 if the slot is free
+     */
+    public synchronized double getViewDelay(int player) {
+        var client = players[player];
+        return client != null ? client.getViewDelay() : 0;
+    }
+
+    public synchronized boolean hasFreeSlot() {
+        return isFree(0) || isFree(1);
+    }
+
+    public synchronized int getNumPlayers() {
+        return (players[0] == null ? 0 : 1) + (players[1] == null ? 0 : 1);
+    }
+
+    public boolean isEmpty() {
+        return clients.isEmpty();
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * Sends an event message to every client in the format of its connection.
+     * Each format is encoded once and the same bytes are queued for every client that uses it.
+     */
+    public void broadcast(String message) {
+        var event = new EncodedEvent(message);
+
+        for (var client : clients) {
+            client.send(event);
+        }
+    }
+
+    /**
+     * Writes the events and snapshot queued for every client since the last flush, one batch per client,
+     * together with a ping to clients that are due one.
+     * Called once per frame by the thread that owns the game state.
+     */
+    public void flush() {
+        long now = RttEstimator.now();
+
+        for (var client : clients) {
+            client.ping(now);
+            client.getOutbox().flush();
+        }
+    }
+
+    /**
+     * Sends the snapshot to every client, over UDP if the client has bound an address. Must not be called concurrently.
+     * Over TCP, clients whose connection does not keep up are sent fewer snapshots, see {@link SnapshotRate}.
+     */
+    public void sendSnapshot(Snapshot snapshot) {
+        encoded.reset(snapshot);
+
+        long now = System.nanoTime();
+
+        for (var client : clients) {
+            if (!client.sendDatagram(encoded) && client.isSnapshotDue(now)) {
+                client.sendSnapshot(encoded);
+            }
+        }
+    }
+}
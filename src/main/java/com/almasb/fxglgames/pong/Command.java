@@ -0,0 +1,34 @@
+package com.almasb.fxglgames.pong;
+
+/**
+ * Player actions a client can send, see {@link CommandDecoder} for their wire tokens.
+ */
+public enum Command {
+
+    LEFT_PRESS('A', true),
+    LEFT_RELEASE('A', false),
+    RIGHT_PRESS('D', true),
+    RIGHT_RELEASE('D', false),
+    FIRE_PRESS('W', true),
+    FIRE_RELEASE('W', false),
+    QUIT(' ', false);
+
+    private final char key;
+    private final boolean press;
+
+    Command(char key, boolean press) {
+        this.key = key;
+        this.press = press;
+    }
+
+    /**
+     * @return the key the command stands for, the first character of its tokens in the {@link CommandDecoder} table, e.g. "A_PLAYERDOWN"
+     */
+    public char getKey() {
+        return key;
+    }
+
+    public boolean isPress() {
+        return press;
+    }
+}
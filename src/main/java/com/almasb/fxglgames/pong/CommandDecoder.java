@@ -0,0 +1,237 @@
+package com.almasb.fxglgames.pong;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes client input messages of the form "name,TOKEN,TOKEN,..." into {@link Command}s.
+ *
+ * Tokens are looked up in a fixed table, e.g. "A_PLAYERDOWN" is {@link Command#LEFT_PRESS} of player 1
+ * and "D_ENEMYUP" is {@link Command#RIGHT_RELEASE} of player 2. Quit tokens only need to end in
+ * "PLAYERQUIT" or "ENEMYQUIT". The first token and unknown tokens are ignored.
+ * A second token of the form "#sequence", e.g. "name,#42,A_PLAYERDOWN", numbers the message's input.
+ * "PONG,serverTime,clientTime" answers a ping and "RESUME,token" asks for a player slot back, rather than carrying commands.
+ * Messages are scanned in place, as bytes or chars, so decoding allocates nothing.
+ */
+public final class CommandDecoder {
+
+    public interface CommandHandler {
+
+        void onCommand(int player, Command command);
+
+        /**
+         * Called before the commands of a message that carries a sequence number.
+         *
+         * @return false to ignore the commands of the message, e.g. because it is a duplicate
+         */
+        default boolean onSequence(int sequence) {
+            return true;
+        }
+
+        /**
+         * Called for a "PONG,serverTime,clientTime" message.
+         */
+        default void onPong(long serverTime, long clientTime) { }
+
+        /**
+         * Called for a "RESUME,token" message.
+         */
+        default void onResume(long token) { }
+    }
+
+    private interface Source<T> {
+        int at(T source, int index);
+    }
+
+    private static final Source<ByteBuffer> BYTES = ByteBuffer::get;
+    private static final Source<CharSequence> CHARS = CharSequence::charAt;
+
+    private static final byte[] ACK_PREFIX = ascii(NetworkMessages.ACK + ",");
+    private static final byte[] PONG_PREFIX = ascii(NetworkMessages.PONG + ",");
+    private static final byte[] RESUME_PREFIX = ascii(NetworkMessages.RESUME + ",");
+    private static final char SEQUENCE_PREFIX = '#';
+
+    private static final int NUM_ENTRIES = 14;
+
+    private static final byte[][] tokens = new byte[NUM_ENTRIES][];
+    private static final boolean[] suffix = new boolean[NUM_ENTRIES];
+    private static final int[] players = new int[NUM_ENTRIES];
+    private static final Command[] commands = new Command[NUM_ENTRIES];
+
+    private static int numEntries = 0;
+
+    static {
+        String[] names = { "PLAYER", "ENEMY" };
+
+        for (int player = 0; player < 2; player++) {
+            for (Command command : Command.values()) {
+                if (command != Command.QUIT) {
+                    add(command.getKey() + "_" + names[player] + (command.isPress() ? "DOWN" : "UP"), false, player, command);
+                }
+            }
+
+            add(names[player] + "QUIT", true, player, Command.QUIT);
+        }
+    }
+
+    private CommandDecoder() { }
+
+    private static void add(String token, boolean isSuffix, int player, Command command) {
+        tokens[numEntries] = ascii(token);
+        suffix[numEntries] = isSuffix;
+        players[numEntries] = player;
+        commands[numEntries] = command;
+        numEntries++;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Decodes the message between the frame's position and limit, without changing either.
+     */
+    public static void decode(ByteBuffer frame, CommandHandler handler) {
+        decode(frame, frame.position(), frame.limit(), BYTES, handler);
+    }
+
+    public static void decode(CharSequence message, CommandHandler handler) {
+        decode(message, 0, message.length(), CHARS, handler);
+    }
+
+    /**
+     * @return the sequence number of an "ACK,sequence" message, or -1 if the frame is not one
+     */
+    public static int parseAck(ByteBuffer frame) {
+        return parseAck(frame, frame.position(), frame.limit(), BYTES);
+    }
+
+    public static int parseAck(CharSequence message) {
+        return parseAck(message, 0, message.length(), CHARS);
+    }
+
+    private static <T> void decode(T message, int start, int end, Source<T> source, CommandHandler handler) {
+        if (end - start > PONG_PREFIX.length && matches(message, start, PONG_PREFIX, source)) {
+            decodePong(message, start + PONG_PREFIX.length, end, source, handler);
+            return;
+        }
+
+        if (end - start > RESUME_PREFIX.length && matches(message, start, RESUME_PREFIX, source)) {
+            long token = parseNumber(message, start + RESUME_PREFIX.length, end, source, Long.MAX_VALUE);
+
+            if (token > 0) {
+                handler.onResume(token);
+            }
+
+            return;
+        }
+
+        int i = start;
+
+        // the first token is not a command
+        while (i < end && source.at(message, i) != ',') {
+            i++;
+        }
+
+        boolean second = true;
+
+        while (i < end) {
+            int tokenStart = ++i;
+
+            while (i < end && source.at(message, i) != ',') {
+                i++;
+            }
+
+            if (second && i > tokenStart && source.at(message, tokenStart) == SEQUENCE_PREFIX) {
+                int sequence = (int) parseNumber(message, tokenStart + 1, i, source, Integer.MAX_VALUE);
+
+                if (sequence >= 0 && !handler.onSequence(sequence))
+                    return;
+            }
+
+            second = false;
+
+            int entry = lookup(message, tokenStart, i, source);
+
+            if (entry >= 0) {
+                handler.onCommand(players[entry], commands[entry]);
+            }
+        }
+    }
+
+    private static <T> int lookup(T message, int start, int end, Source<T> source) {
+        int length = end - start;
+
+        for (int entry = 0; entry < numEntries; entry++) {
+            byte[] token = tokens[entry];
+
+            if (length == token.length || (suffix[entry] && length > token.length)) {
+                if (matches(message, end - token.length, token, source)) {
+                    return entry;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private static <T> boolean matches(T message, int start, byte[] token, Source<T> source) {
+        for (int i = 0; i < token.length; i++) {
+            if (source.at(message, start + i) != token[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private static <T> int parseAck(T message, int start, int end, Source<T> source) {
+        int length = end - start;
+
+        if (length <= ACK_PREFIX.length || !matches(message, start, ACK_PREFIX, source))
+            return -1;
+
+        return (int) parseNumber(message, start + ACK_PREFIX.length, end, source, Integer.MAX_VALUE);
+    }
+
+    private static <T> void decodePong(T message, int start, int end, Source<T> source, CommandHandler handler) {
+        int comma = start;
+
+        while (comma < end && source.at(message, comma) != ',') {
+            comma++;
+        }
+
+        if (comma == end)
+            return;
+
+        long serverTime = parseNumber(message, start, comma, source, Long.MAX_VALUE);
+        long clientTime = parseNumber(message, comma + 1, end, source, Long.MAX_VALUE);
+
+        if (serverTime >= 0 && clientTime >= 0) {
+            handler.onPong(serverTime, clientTime);
+        }
+    }
+
+    // non-negative decimal number, or -1 if the text is empty, not a number or larger than max
+    private static <T> long parseNumber(T message, int start, int end, Source<T> source, long max) {
+        if (start == end)
+            return -1;
+
+        long number = 0;
+
+        for (int i = start; i < end; i++) {
+            int digit = source.at(message, i) - '0';
+
+            if (digit < 0 || digit > 9 || number > (max - digit) / 10)
+                return -1;
+
+            number = number * 10 + digit;
+        }
+
+        return number;
+    }
+}
@@ -0,0 +1,49 @@
+package com.almasb.fxglgames.pong;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An event message together with its encoded forms, which are created on first use
+ * so that a broadcast encodes each format at most once no matter how many clients receive it.
+ * The encoded forms are shared by all recipients and must not be modified.
+ */
+final class EncodedEvent {
+
+    private final String message;
+
+    private byte[] textBytes;
+    private Frame textFrame;
+    private byte[] binary;
+
+    EncodedEvent(String message) {
+        this.message = message;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    byte[] getTextBytes() {
+        if (textBytes == null) {
+            textBytes = message.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        return textBytes;
+    }
+
+    Frame getTextFrame() {
+        if (textFrame == null) {
+            textFrame = Frame.wrap(getTextBytes());
+        }
+
+        return textFrame;
+    }
+
+    byte[] getBinary() {
+        if (binary == null) {
+            binary = SnapshotCodec.encodeEvent(message);
+        }
+
+        return binary;
+    }
+}
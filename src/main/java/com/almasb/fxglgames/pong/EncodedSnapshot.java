@@ -0,0 +1,66 @@
+package com.almasb.fxglgames.pong;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A snapshot together with its encoded forms, which are created on first use
+ * so that each format is encoded at most once no matter how many clients receive it.
+ */
+final class EncodedSnapshot {
+
+    static final Metrics.Histogram ENCODE_TIME = Metrics.histogram("pong_snapshot_encode_seconds", "Time taken to encode a snapshot in one format");
+
+    private Snapshot snapshot;
+    private String text;
+    private byte[] textBytes;
+    private Frame textFrame;
+    private byte[] keyframe;
+
+    void reset(Snapshot snapshot) {
+        this.snapshot = snapshot;
+        text = null;
+        textBytes = null;
+        textFrame = null;
+        keyframe = null;
+    }
+
+    Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    String getText() {
+        if (text == null) {
+            long start = System.nanoTime();
+            text = SnapshotCodec.toText(snapshot);
+            ENCODE_TIME.recordNanos(System.nanoTime() - start);
+        }
+
+        return text;
+    }
+
+    byte[] getTextBytes() {
+        if (textBytes == null) {
+            textBytes = getText().getBytes(StandardCharsets.US_ASCII);
+        }
+
+        return textBytes;
+    }
+
+    Frame getTextFrame() {
+        if (textFrame == null) {
+            textFrame = Frame.wrap(getTextBytes());
+        }
+
+        return textFrame;
+    }
+
+    byte[] getKeyframe() {
+        if (keyframe == null) {
+            long start = System.nanoTime();
+            keyframe = SnapshotCodec.encode(snapshot);
+            ENCODE_TIME.recordNanos(System.nanoTime() - start);
+        }
+
+        return keyframe;
+    }
+}
@@ -0,0 +1,80 @@
+package com.almasb.fxglgames.pong;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Encoded bytes of a text message, or of a batch of them, as written by the FXGL text connections.
+ *
+ * A frame is never modified once created, so the frame of a broadcast message is encoded once
+ * and the same instance is handed to the writer of every recipient. A batch only refers to its frames.
+ */
+public final class Frame {
+
+    private final byte[] bytes;
+    private final Frame[] parts;
+
+    private Frame(byte[] bytes, Frame[] parts) {
+        this.bytes = bytes;
+        this.parts = parts;
+    }
+
+    /**
+     * @param bytes encoded message, which must not be modified afterwards
+     */
+    public static Frame wrap(byte[] bytes) {
+        return new Frame(bytes, null);
+    }
+
+    /**
+     * @return a frame that writes the given frames one after the other
+     */
+    public static Frame batch(List<Frame> frames) {
+        return new Frame(null, frames.toArray(new Frame[0]));
+    }
+
+    /**
+     * @return number of message bytes, excluding any delimiters added when writing
+     */
+    public int size() {
+        if (parts == null)
+            return bytes.length;
+
+        int size = 0;
+
+        for (Frame part : parts) {
+            size += part.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * @return a read-only view of the message bytes of a single frame
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        if (parts != null)
+            throw new IllegalStateException("A batch has no single buffer");
+
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the message bytes, each message followed by '\n' if delimit is set.
+     */
+    void writeTo(OutputStream out, boolean delimit) throws IOException {
+        if (parts == null) {
+            out.write(bytes);
+
+            if (delimit) {
+                out.write('\n');
+            }
+        } else {
+            for (Frame part : parts) {
+                part.writeTo(out, delimit);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.almasb.fxglgames.pong;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the bytes received on a connection into frames, straight out of the connection's read buffer.
+ *
+ * The buffer is owned by the caller and kept in write mode: the caller reads into it and then
+ * calls {@link #decode(FrameHandler)}, which passes every complete frame to the handler and keeps
+ * the bytes of an incomplete frame for the next read. Frames are passed as a view of the buffer,
+ * which is reused for every frame, so no bytes are copied and nothing is allocated per frame.
+ */
+public final class FrameDecoder {
+
+    /**
+     * Largest accepted frame payload in bytes, can be overridden with the pong.maxFrameSize system property.
+     */
+    public static final int MAX_FRAME_SIZE = Integer.getInteger("pong.maxFrameSize", 1024);
+
+    /**
+     * Read buffer size that fits a frame of the maximum size.
+     */
+    public static final int BUFFER_SIZE = Math.max(4096, MAX_FRAME_SIZE + 2);
+
+    public interface FrameHandler {
+
+        /**
+         * @param frame payload between position and limit, only valid during this call
+         */
+        void onFrame(ByteBuffer frame);
+    }
+
+    private final ByteBuffer buffer;
+    private final ByteBuffer view;
+    private final Framing framing;
+    private final int maxFrameSize;
+
+    // bytes after the buffer position already searched for a delimiter
+    private int scanned = 0;
+
+    public FrameDecoder(ByteBuffer buffer, Framing framing) {
+        this(buffer, framing, MAX_FRAME_SIZE);
+    }
+
+    public FrameDecoder(ByteBuffer buffer, Framing framing, int maxFrameSize) {
+        if (framing != Framing.RAW && buffer.capacity() < maxFrameSize + 2)
+            throw new IllegalArgumentException("Buffer cannot hold a frame of " + maxFrameSize + " bytes");
+
+        this.buffer = buffer;
+        this.view = buffer.duplicate();
+        this.framing = framing;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Passes all complete frames in the buffer to the handler.
+     *
+     * @throws ProtocolException if a frame is larger than the maximum frame size,
+     *         the connection should then be closed
+     */
+    public void decode(FrameHandler handler) throws ProtocolException {
+        buffer.flip();
+
+        try {
+            switch (framing) {
+                case RAW:
+                    if (buffer.hasRemaining()) {
+                        emit(handler, buffer.position(), buffer.limit());
+                        buffer.position(buffer.limit());
+                    }
+                    break;
+
+                case LENGTH_PREFIXED:
+                    decodeLengthPrefixed(handler);
+                    break;
+
+                case LINE:
+                    decodeLines(handler);
+                    break;
+            }
+        } finally {
+            buffer.compact();
+        }
+    }
+
+    private void decodeLengthPrefixed(FrameHandler handler) throws ProtocolException {
+        while (buffer.remaining() >= 2) {
+            int start = buffer.position();
+            int length = buffer.getShort(start) & 0xFFFF;
+
+            if (length > maxFrameSize)
+                throw new ProtocolException("Frame of " + length + " bytes is larger than " + maxFrameSize);
+
+            if (buffer.remaining() < 2 + length)
+                return;
+
+            buffer.position(start + 2 + length);
+            emit(handler, start + 2, start + 2 + length);
+        }
+    }
+
+    private void decodeLines(FrameHandler handler) throws ProtocolException {
+        int i = buffer.position() + scanned;
+
+        while (i < buffer.limit()) {
+            if (buffer.get(i) == '\n') {
+                int start = buffer.position();
+                int end = i > start && buffer.get(i - 1) == '\r' ? i - 1 : i;
+
+                if (end - start > maxFrameSize)
+                    throw new ProtocolException("Frame of " + (end - start) + " bytes is larger than " + maxFrameSize);
+
+                buffer.position(i + 1);
+                emit(handler, start, end);
+            }
+
+            i++;
+        }
+
+        scanned = buffer.remaining();
+
+        if (scanned > maxFrameSize + 1)
+            throw new ProtocolException("No delimiter within " + maxFrameSize + " bytes");
+    }
+
+    private void emit(FrameHandler handler, int start, int end) {
+        view.clear();
+        view.position(start);
+        view.limit(end);
+        handler.onFrame(view);
+    }
+}
@@ -0,0 +1,25 @@
+package com.almasb.fxglgames.pong;
+
+/**
+ * How messages are delimited on a connection.
+ */
+public enum Framing {
+
+    /**
+     * Messages are not delimited, whatever a single read returns is one message.
+     * This is how the text protocol was read before it was framed, so messages may arrive merged or split.
+     * The text protocol uses this when started with -Dpong.textFraming=raw, for older clients.
+     */
+    RAW,
+
+    /**
+     * Every message is prefixed by its length as an unsigned short. Used by the binary protocol.
+     */
+    LENGTH_PREFIXED,
+
+    /**
+     * Every message is terminated by '\n', an optional preceding '\r' is ignored.
+     * The text protocol uses this by default.
+     */
+    LINE
+}
@@ -0,0 +1,26 @@
+package com.almasb.fxglgames.pong;
+
+import com.almasb.fxgl.net.NetService;
+
+/**
+ * Runs the game with the same rules and networking as {@link PongApp}, but without a window,
+ * UI, textures, sounds or animations. Connecting clients are matched into {@link Room}s,
+ * each with its own {@link Match}, so one server hosts many matches at once.
+ */
+public class HeadlessServer {
+
+    private final RoomManager rooms = new RoomManager(RoomManager.TICK_THREADS);
+    private final PongServer server = new PongServer(rooms);
+
+    public void start() {
+        server.start(new NetService());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        new HeadlessServer().start();
+
+        // the network threads are daemons and room threads only exist while there are rooms,
+        // so the main thread keeps the server alive until the process is stopped
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,148 @@
+package com.almasb.fxglgames.pong;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Input state of the two player slots of a {@link ClientGroup}.
+ *
+ * Network threads record commands as soon as they are decoded, without locks or queues,
+ * and the simulation applies the state at the start of each tick. Only the latest state of each key
+ * counts, so a press and release between two ticks cancel out. A fire press is kept until it is applied.
+ *
+ * Input can carry the sequence number of the client message it came in. Each apply notes the latest
+ * sequence number recorded for each player, which snapshots report back so that clients can reconcile.
+ */
+public class InputBuffer {
+
+    /**
+     * What the input is applied to, e.g. the bats of the windowed game or a {@link Match}.
+     */
+    public interface Target {
+
+        void left(int player);
+
+        void right(int player);
+
+        void stop(int player);
+
+        void fire(int player);
+    }
+
+    private static final int LEFT_HELD = 1;
+    private static final int RIGHT_HELD = 1 << 1;
+    private static final int RIGHT_LAST = 1 << 2;
+    private static final int FIRE = 1 << 3;
+
+    private final AtomicIntegerArray state = new AtomicIntegerArray(2);
+    private final AtomicIntegerArray recordedSequence = new AtomicIntegerArray(new int[] { -1, -1 });
+
+    // only touched by the simulation thread
+    private final int[] direction = new int[2];
+    private final int[] appliedSequence = { -1, -1 };
+
+    /**
+     * Records a command of the given player, may be called from any thread.
+     */
+    public void record(int player, Command command) {
+        int prev, next;
+
+        do {
+            prev = state.get(player);
+            next = update(prev, command);
+        } while (!state.compareAndSet(player, prev, next));
+    }
+
+    /**
+     * Records a command that came in the client message with the given sequence number, may be called from any thread.
+     */
+    public void record(int player, Command command, int sequence) {
+        record(player, command);
+
+        // after the state, so that an apply that sees this number also sees the command
+        if (sequence >= 0) {
+            recordedSequence.set(player, sequence);
+        }
+    }
+
+    /**
+     * Releases all keys of the given player, e.g. when the player has left.
+     */
+    public void clear(int player) {
+        state.set(player, 0);
+        recordedSequence.set(player, -1);
+    }
+
+    /**
+     * @return sequence number of the latest input of the player taken into account by the last apply, or -1 if none
+     */
+    public int getAppliedSequence(int player) {
+        return appliedSequence[player];
+    }
+
+    /**
+     * Acknowledges the input taken into account by the last apply in the snapshot, on the simulation thread.
+     */
+    public void capture(Snapshot snapshot) {
+        for (int player = 0; player < 2; player++) {
+            snapshot.setInputSequence(player, appliedSequence[player]);
+        }
+    }
+
+    /**
+     * Applies the input recorded since the previous call. The bats are only told to move or stop when
+     * their direction changes, and to fire at most once per call.
+     */
+    public void apply(Target target) {
+        for (int player = 0; player < 2; player++) {
+            appliedSequence[player] = recordedSequence.get(player);
+
+            int s = state.getAndUpdate(player, value -> value & ~FIRE);
+
+            int dir = direction(s);
+
+            if (dir != direction[player]) {
+                direction[player] = dir;
+
+                if (dir < 0) {
+                    target.left(player);
+                } else if (dir > 0) {
+                    target.right(player);
+                } else {
+                    target.stop(player);
+                }
+            }
+
+            if ((s & FIRE) != 0) {
+                target.fire(player);
+            }
+        }
+    }
+
+    private static int update(int s, Command command) {
+        switch (command) {
+            case LEFT_PRESS:
+                return (s | LEFT_HELD) & ~RIGHT_LAST;
+            case LEFT_RELEASE:
+                return s & ~LEFT_HELD;
+            case RIGHT_PRESS:
+                return s | RIGHT_HELD | RIGHT_LAST;
+            case RIGHT_RELEASE:
+                return s & ~RIGHT_HELD;
+            case FIRE_PRESS:
+                return s | FIRE;
+            default:
+                return s;
+        }
+    }
+
+    // when both keys are held, the one pressed last wins
+    private static int direction(int s) {
+        boolean left = (s & LEFT_HELD) != 0;
+        boolean right = (s & RIGHT_HELD) != 0;
+
+        if (left && right)
+            return (s & RIGHT_LAST) != 0 ? 1 : -1;
+
+        return left ? -1 : right ? 1 : 0;
+    }
+}
@@ -0,0 +1,179 @@
+package com.almasb.fxglgames.pong;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongSupplier;
+
+/**
+ * Append-only record of a {@link Match}: every applied input, every event and periodic keyframes
+ * of the full match state, written to a memory-mapped file so that recording a tick costs
+ * a few buffer writes and no system calls. See {@link Replay} for the file layout and for playing it back.
+ *
+ * Rooms record their matches to the directory given by -Dpong.recordDir.
+ * A journal is written by the thread running the match only.
+ */
+public class Journal implements AutoCloseable {
+
+    public static final String RECORD_DIR = System.getProperty("pong.recordDir");
+
+    /**
+     * Ticks between two keyframes, can be overridden with the pong.keyframeInterval system property.
+     */
+    public static final int KEYFRAME_INTERVAL = Integer.getInteger("pong.keyframeInterval", 60);
+
+    static final int MAGIC = 0x504F4E47;
+    // 2: balls moved by SweptPhysics, earlier journals do not replay the same
+    // 3: bullets per tank in the header, keyframes with a size and any number of balls
+    // 4: maximum rewind in the header, REWIND records, rewind in keyframes
+    static final int VERSION = 4;
+
+    static final byte END = 0;
+    static final byte INPUT = 1;
+    static final byte EVENT = 2;
+    static final byte KEYFRAME = 3;
+    static final byte REWIND = 4;
+
+    static final byte LEFT = 0;
+    static final byte RIGHT = 1;
+    static final byte STOP = 2;
+    static final byte FIRE = 3;
+
+    // the file is mapped and grown in chunks of this size
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_EVENT_SIZE = 1 + 8 + 1 + 255;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long chunkStart = 0;
+
+    /**
+     * @param tickDuration the fixed dt of every tick, needed to replay the match
+     * @param bulletsPerTank see {@link Match#getBulletsPerTank()}, also needed to replay the match
+     * @param maxRewindTicks see {@link Match#getMaxRewindTicks()}, also needed to replay the match
+     */
+    public Journal(Path file, double tickDuration, int bulletsPerTank, int maxRewindTicks) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_SIZE);
+
+        buffer.putInt(MAGIC)
+                .put((byte) VERSION)
+                .putDouble(tickDuration)
+                .putShort((short) bulletsPerTank)
+                .putShort((short) maxRewindTicks);
+    }
+
+    /**
+     * @return a target that records each input at the current tick before applying it to the match
+     */
+    public InputBuffer.Target record(Match match, LongSupplier tick) {
+        return new InputBuffer.Target() {
+            @Override
+            public void left(int player) {
+                input(tick.getAsLong(), player, LEFT);
+                match.left(player);
+            }
+
+            @Override
+            public void right(int player) {
+                input(tick.getAsLong(), player, RIGHT);
+                match.right(player);
+            }
+
+            @Override
+            public void stop(int player) {
+                input(tick.getAsLong(), player, STOP);
+                match.stop(player);
+            }
+
+            @Override
+            public void fire(int player) {
+                input(tick.getAsLong(), player, FIRE);
+                match.fire(player);
+            }
+        };
+    }
+
+    public void input(long tick, int player, byte action) {
+        ensureCapacity(MAX_EVENT_SIZE);
+
+        buffer.put(INPUT)
+                .putLong(tick)
+                .put((byte) player)
+                .put(action);
+    }
+
+    /**
+     * Records a change of the rewind used for the player's hits, applied before the given tick like an input.
+     */
+    public void rewind(long tick, int player, int ticks) {
+        ensureCapacity(MAX_EVENT_SIZE);
+
+        buffer.put(REWIND)
+                .putLong(tick)
+                .put((byte) player)
+                .putShort((short) ticks);
+    }
+
+    public void event(long tick, String event) {
+        ensureCapacity(MAX_EVENT_SIZE);
+
+        buffer.put(EVENT)
+                .putLong(tick)
+                .put((byte) event.length());
+
+        for (int i = 0; i < event.length(); i++) {
+            buffer.put((byte) event.charAt(i));
+        }
+    }
+
+    /**
+     * Records the state of the match after the given tick, or before the first tick if it is -1.
+     */
+    public void keyframe(long tick, Match match) {
+        int size = match.getStateSize();
+
+        ensureCapacity(1 + 8 + 4 + size);
+
+        buffer.put(KEYFRAME)
+                .putLong(tick)
+                .putInt(size);
+
+        match.save(buffer);
+    }
+
+    private void ensureCapacity(int recordSize) {
+        if (buffer.remaining() >= recordSize + 1)
+            return;
+
+        try {
+            // the next chunk is mapped from the end of the last record, so records stay contiguous.
+            // The full chunk is not forced here, which would block the tick on the disk: the OS writes it back
+            chunkStart += buffer.position();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, CHUNK_SIZE);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not grow journal", e);
+        }
+    }
+
+    /**
+     * Writes the journal to the disk. The unused rest of the last chunk stays zero, which reads as {@link #END}.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        // also writes back what is left of the earlier chunks, which are no longer mapped
+        channel.force(true);
+        channel.close();
+    }
+
+    static String readEvent(ByteBuffer in) {
+        byte[] bytes = new byte[in.get() & 0xFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,24 @@
+package com.almasb.fxglgames.pong;
+
+/**
+ * Decides which {@link ClientGroup} a newly connected client joins.
+ */
+public interface Lobby {
+
+    /**
+     * Called when a client has connected and not resumed a slot within {@link PongServer#MATCH_DELAY_MS}.
+     */
+    void onConnected(Client client);
+
+    /**
+     * Called on a network thread when a client that was passed to {@link #onConnected(Client)} disconnects.
+     */
+    void onDisconnected(Client client);
+
+    /**
+     * Called on a network thread when a connected client sends "RESUME,token" to take back the player slot
+     * it was given the token for, see {@link ClientGroup#resume(Client, long)}. The client may not have been
+     * passed to {@link #onConnected(Client)} yet, it is passed there afterwards if it has not joined a group.
+     */
+    void onResume(Client client, long token);
+}
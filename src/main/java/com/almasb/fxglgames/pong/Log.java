@@ -0,0 +1,29 @@
+package com.almasb.fxglgames.pong;
+
+/**
+ * Log level of the console output, set with -Dpong.logLevel=debug.
+ * Messages printed per frame or per received message are only printed at the debug level.
+ */
+public final class Log {
+
+    public enum Level {
+        DEBUG, INFO, WARN
+    }
+
+    public static final Level LEVEL = parseLevel(System.getProperty("pong.logLevel", "info"));
+
+    private Log() { }
+
+    private static Level parseLevel(String name) {
+        try {
+            return Level.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Warning: Unknown log level " + name + ", using info.");
+            return Level.INFO;
+        }
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(LEVEL) >= 0;
+    }
+}
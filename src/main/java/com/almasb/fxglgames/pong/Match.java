@@ -0,0 +1,338 @@
+package com.almasb.fxglgames.pong;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import static com.almasb.fxglgames.pong.NetworkMessages.*;
+
+/**
+ * The rules of a match without any scene graph, physics engine or assets,
+ * as used by the {@link HeadlessServer}.
+ *
+ * Bats are kinematic boxes that only move horizontally. Each bat can have a number of balls in flight
+ * (one by default), which bounce off the screen edges and their own bat, and score a point when they hit the other bat.
+ * Balls are kept in {@link Projectiles} and moved by {@link SweptPhysics}, so they cannot pass through a bat or a wall within a tick.
+ *
+ * Hits are lag compensated: a player's balls are tested against the other bat where it was
+ * {@link #setRewind(int, int) a number of ticks ago}, when the player saw it, as kept in a {@link BatHistory}.
+ * Sizes, speeds and spawn offsets match the entities created by {@link PongApp} and {@link PongFactory}.
+ */
+public class Match implements InputBuffer.Target {
+
+    public static final int WIDTH = 800;
+    public static final int HEIGHT = 600;
+
+    public static final double BAT_SIZE = 100;
+    public static final double BALL_SIZE = 15;
+
+    public static final double BAT_SPEED = 210;
+    public static final double FIRING_SPEED = 1000;
+
+    /**
+     * Balls each player can have in flight at once, can be overridden with the pong.bulletsPerTank system property.
+     * With more than one, snapshots carry the full projectile list, see {@link SnapshotCodec}.
+     */
+    public static final int BULLETS_PER_TANK = Integer.getInteger("pong.bulletsPerTank", 1);
+
+    /**
+     * Furthest back a hit is judged, can be overridden with the pong.maxRewindMs system property (0 turns lag compensation off).
+     */
+    public static final int MAX_REWIND_MS = Integer.getInteger("pong.maxRewindMs", 200);
+    public static final int MAX_REWIND_TICKS = Math.round(MAX_REWIND_MS * TickScheduler.TICK_RATE / 1000f);
+
+    private static final double MIN_BALL_SPEED_X = 5 * 60;
+    private static final double MIN_BALL_SPEED_Y = 5 * 60 * 2;
+
+    private static final double[] BAT_Y = { HEIGHT - 120, 30 };
+    private static final double FIRING_OFFSET_X = BAT_SIZE / 2 - 7;
+    private static final double[] FIRING_OFFSET_Y = { -BAT_SIZE + 80, BAT_SIZE + 10 };
+    private static final double[] FIRING_VELOCITY_Y = { -FIRING_SPEED, FIRING_SPEED };
+
+    private static final String[] BALL_HIT_BAT = { BALL_HIT_BAT1, BALL_HIT_BAT2 };
+    private static final String[] BAT_FIRED_BALL = { BAT1_FIRED_BALL, BAT2_FIRED_BALL };
+
+    // indexed by SweptPhysics.WALL_*
+    private static final String[] WALL_EVENTS = { HIT_WALL_LEFT, HIT_WALL_RIGHT, HIT_WALL_UP, HIT_WALL_DOWN };
+
+    private final Consumer<String> events;
+
+    private final double[] batX = new double[2];
+    private final int[] direction = new int[2];
+    private final int[] score = new int[2];
+
+    private final int bulletsPerTank;
+    private final Projectiles balls;
+
+    private final int maxRewindTicks;
+    private final int[] rewind = new int[2];
+    private final BatHistory batHistory;
+
+    // the bats as seen by each player: its own where it is, the other where it was rewind[player] ticks ago
+    private final double[][] seenBatX = new double[2][2];
+    private final SweptPhysics[] physics = {
+            new SweptPhysics(WIDTH, HEIGHT, BALL_SIZE, BAT_SIZE, seenBatX[0], BAT_Y),
+            new SweptPhysics(WIDTH, HEIGHT, BALL_SIZE, BAT_SIZE, seenBatX[1], BAT_Y)
+    };
+
+    private final SweptPhysics.Contacts contacts = new SweptPhysics.Contacts() {
+        @Override
+        public void onWall(int body, int wall) {
+            onBallHitWall(wall);
+        }
+
+        @Override
+        public boolean onBox(int body, int box) {
+            return onBallHitBat(balls.owner[body], box);
+        }
+    };
+
+    /**
+     * @param events receives the same event messages that {@link PongApp} broadcasts, e.g. {@link NetworkMessages#HIT_WALL_UP}
+     */
+    public Match(Consumer<String> events) {
+        this(events, BULLETS_PER_TANK);
+    }
+
+    public Match(Consumer<String> events, int bulletsPerTank) {
+        this(events, bulletsPerTank, MAX_REWIND_TICKS);
+    }
+
+    public Match(Consumer<String> events, int bulletsPerTank, int maxRewindTicks) {
+        this.events = events;
+        this.bulletsPerTank = bulletsPerTank;
+        this.maxRewindTicks = maxRewindTicks;
+        this.balls = new Projectiles(2 * bulletsPerTank);
+        this.batHistory = new BatHistory(maxRewindTicks);
+        reset();
+    }
+
+    public void reset() {
+        for (int i = 0; i < 2; i++) {
+            batX[i] = WIDTH / 2;
+            direction[i] = 0;
+            score[i] = 0;
+            rewind[i] = 0;
+        }
+
+        balls.clear();
+        batHistory.clear();
+    }
+
+    @Override
+    public void left(int player) {
+        direction[player] = -1;
+    }
+
+    @Override
+    public void right(int player) {
+        direction[player] = 1;
+    }
+
+    @Override
+    public void stop(int player) {
+        direction[player] = 0;
+    }
+
+    @Override
+    public void fire(int player) {
+        if (balls.count(player) < bulletsPerTank) {
+            balls.add(player, batX[player] + FIRING_OFFSET_X, BAT_Y[player] + FIRING_OFFSET_Y[player], 0, FIRING_VELOCITY_Y[player]);
+        }
+
+        events.accept(BAT_FIRED_BALL[player]);
+    }
+
+    /**
+     * Sets how far back the other bat is when judging hits by the given player's balls,
+     * usually the time the player's view of the match lags behind the server.
+     *
+     * @param ticks limited to the maximum rewind this match was created with
+     */
+    public void setRewind(int player, int ticks) {
+        rewind[player] = Math.max(0, Math.min(ticks, maxRewindTicks));
+    }
+
+    public int getRewind(int player) {
+        return rewind[player];
+    }
+
+    public int getMaxRewindTicks() {
+        return maxRewindTicks;
+    }
+
+    public void step(double dt) {
+        for (int i = 0; i < 2; i++) {
+            moveBat(i, dt);
+        }
+
+        batHistory.record(batX[0], batX[1]);
+
+        for (int player = 0; player < 2; player++) {
+            int other = 1 - player;
+
+            seenBatX[player][player] = batX[player];
+            seenBatX[player][other] = batHistory.getX(other, rewind[player]);
+            physics[player].updateBoxes();
+        }
+
+        // backwards, since a removed ball is replaced by the last one
+        for (int i = balls.size() - 1; i >= 0; i--) {
+            moveBall(i, dt);
+        }
+    }
+
+    private void moveBat(int player, double dt) {
+        double distance = BAT_SPEED * dt;
+
+        if (direction[player] < 0 && batX[player] >= distance) {
+            batX[player] -= distance;
+        } else if (direction[player] > 0 && batX[player] + BAT_SIZE <= WIDTH - distance) {
+            batX[player] += distance;
+        }
+    }
+
+    private void moveBall(int i, double dt) {
+        limitVelocity(i);
+
+        if (!physics[balls.owner[i]].move(i, balls.x, balls.y, balls.vx, balls.vy, dt, contacts)) {
+            balls.remove(i);
+        }
+    }
+
+    // same limits as BallComponent
+    private void limitVelocity(int i) {
+        if (Math.abs(balls.vx[i]) < MIN_BALL_SPEED_X) {
+            balls.vx[i] = Math.signum(balls.vx[i]) * MIN_BALL_SPEED_X;
+        }
+
+        if (Math.abs(balls.vy[i]) < MIN_BALL_SPEED_Y) {
+            balls.vy[i] = Math.signum(balls.vy[i]) * MIN_BALL_SPEED_X;
+        }
+    }
+
+    private void onBallHitWall(int wall) {
+        events.accept(WALL_EVENTS[wall]);
+    }
+
+    /**
+     * @return true if the ball bounces off the bat, which it does off its owner's bat
+     */
+    private boolean onBallHitBat(int player, int bat) {
+        if (bat != player) {
+            // hit the opponent: a point for the owner of the ball, who can then fire it again
+            score[player]++;
+        }
+
+        events.accept(BALL_HIT_BAT[bat]);
+        return bat == player;
+    }
+
+    /**
+     * Fills the snapshot with the current state, leaving its sequence number unchanged.
+     * The ball fields hold each player's first ball, the projectile list is only filled with more than one ball per tank.
+     */
+    public void capture(Snapshot snapshot) {
+        for (int i = 0; i < 2; i++) {
+            snapshot.setBatX(i, batX[i]);
+            snapshot.setScore(i, score[i]);
+
+            int first = balls.first(i);
+
+            if (first >= 0) {
+                snapshot.setBall(i, balls.x[first], balls.y[first]);
+            } else {
+                snapshot.clearBall(i);
+            }
+        }
+
+        snapshot.clearProjectiles(bulletsPerTank > 1);
+
+        if (bulletsPerTank > 1) {
+            for (int i = 0; i < balls.size(); i++) {
+                snapshot.addProjectile(balls.owner[i], balls.x[i], balls.y[i]);
+            }
+        }
+    }
+
+    private static final int PLAYER_STATE_SIZE = 8 + 1 + 4 + 2;
+    private static final int BALL_STATE_SIZE = 1 + 4 * 8;
+
+    /**
+     * @return size in bytes of the full state written by {@link #save(ByteBuffer)}
+     */
+    public int getStateSize() {
+        return 2 * PLAYER_STATE_SIZE + 2 + balls.size() * BALL_STATE_SIZE;
+    }
+
+    /**
+     * @return the largest state a match with the given number of bullets per tank can write
+     */
+    public static int getMaxStateSize(int bulletsPerTank) {
+        return 2 * PLAYER_STATE_SIZE + 2 + 2 * bulletsPerTank * BALL_STATE_SIZE;
+    }
+
+    /**
+     * Writes the full state, including what snapshots leave out such as ball velocities,
+     * so that a match can be restored or compared exactly. The bat history is left out,
+     * a loaded match judges hits against the loaded bat positions until it has built up a new one.
+     */
+    public void save(ByteBuffer out) {
+        for (int i = 0; i < 2; i++) {
+            out.putDouble(batX[i])
+                    .put((byte) direction[i])
+                    .putInt(score[i])
+                    .putShort((short) rewind[i]);
+        }
+
+        out.putShort((short) balls.size());
+
+        for (int i = 0; i < balls.size(); i++) {
+            out.put(balls.owner[i])
+                    .putDouble(balls.x[i])
+                    .putDouble(balls.y[i])
+                    .putDouble(balls.vx[i])
+                    .putDouble(balls.vy[i]);
+        }
+    }
+
+    public void load(ByteBuffer in) {
+        for (int i = 0; i < 2; i++) {
+            batX[i] = in.getDouble();
+            direction[i] = in.get();
+            score[i] = in.getInt();
+            rewind[i] = in.getShort() & 0xFFFF;
+        }
+
+        balls.clear();
+        batHistory.clear();
+
+        int count = in.getShort() & 0xFFFF;
+
+        for (int i = 0; i < count; i++) {
+            balls.add(in.get(), in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+        }
+    }
+
+    public double getBatX(int player) {
+        return batX[player];
+    }
+
+    public double getBatY(int player) {
+        return BAT_Y[player];
+    }
+
+    public int getScore(int player) {
+        return score[player];
+    }
+
+    public int getBulletsPerTank() {
+        return bulletsPerTank;
+    }
+
+    /**
+     * @return the balls in flight, for reading only
+     */
+    public Projectiles getBalls() {
+        return balls;
+    }
+}
@@ -0,0 +1,217 @@
+package com.almasb.fxglgames.pong;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Process-wide registry of server metrics.
+ *
+ * Counters and histograms are {@link LongAdder}s, so threads updating them on the hot path
+ * do not contend with each other. Gauges and collectors are only evaluated when the metrics are read.
+ * With -Dpong.metricsPort=9400 the metrics are served in the Prometheus text format at
+ * http://127.0.0.1:9400/metrics.
+ */
+public final class Metrics {
+
+    public static final int PORT = Integer.getInteger("pong.metricsPort", 0);
+
+    /**
+     * Writes metrics that are not known up front, e.g. one line per connection.
+     */
+    public interface Collector {
+        void collect(StringBuilder out);
+    }
+
+    public static final class Counter {
+
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Durations in fixed buckets from 10 microseconds to 1 second.
+     */
+    public static final class Histogram {
+
+        private static final double[] BOUNDS = { 0.00001, 0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 1 };
+
+        private static final long[] BOUNDS_NANOS = new long[BOUNDS.length];
+
+        static {
+            for (int i = 0; i < BOUNDS.length; i++) {
+                BOUNDS_NANOS[i] = (long) (BOUNDS[i] * 1_000_000_000L);
+            }
+        }
+
+        // the last bucket counts durations above all bounds
+        private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void recordNanos(long nanos) {
+            int i = 0;
+            while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) {
+                i++;
+            }
+
+            buckets[i].increment();
+            sumNanos.add(nanos);
+        }
+
+        public long getCount() {
+            long count = 0;
+
+            for (var bucket : buckets) {
+                count += bucket.sum();
+            }
+
+            return count;
+        }
+
+        private void write(StringBuilder out, String name) {
+            long cumulative = 0;
+
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+
+                out.append(name).append("_bucket{le=\"")
+                        .append(i < BOUNDS.length ? String.valueOf(BOUNDS[i]) : "+Inf")
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+
+            out.append(name).append("_sum ").append(sumNanos.sum() / 1_000_000_000.0).append('\n');
+            out.append(name).append("_count ").append(cumulative).append('\n');
+        }
+    }
+
+    private static final class Metric {
+        final String name;
+        final String help;
+        final String type;
+        final Object value;
+
+        Metric(String name, String help, String type, Object value) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    private static final List<Metric> metrics = new CopyOnWriteArrayList<>();
+    private static final List<Collector> collectors = new CopyOnWriteArrayList<>();
+
+    private static HttpServer httpServer;
+
+    private Metrics() { }
+
+    public static Counter counter(String name, String help) {
+        var counter = new Counter();
+        metrics.add(new Metric(name, help, "counter", counter));
+        return counter;
+    }
+
+    public static Histogram histogram(String name, String help) {
+        var histogram = new Histogram();
+        metrics.add(new Metric(name, help, "histogram", histogram));
+        return histogram;
+    }
+
+    public static void gauge(String name, String help, DoubleSupplier value) {
+        metrics.add(new Metric(name, help, "gauge", value));
+    }
+
+    public static void addCollector(Collector collector) {
+        collectors.add(collector);
+    }
+
+    public static void removeCollector(Collector collector) {
+        collectors.remove(collector);
+    }
+
+    /**
+     * @return all metrics in the Prometheus text format
+     */
+    public static String toText() {
+        var out = new StringBuilder(4096);
+
+        for (var metric : metrics) {
+            writeHeader(out, metric.name, metric.help, metric.type);
+
+            if (metric.value instanceof Counter) {
+                out.append(metric.name).append(' ').append(((Counter) metric.value).get()).append('\n');
+            } else if (metric.value instanceof Histogram) {
+                ((Histogram) metric.value).write(out, metric.name);
+            } else {
+                out.append(metric.name).append(' ').append(((DoubleSupplier) metric.value).getAsDouble()).append('\n');
+            }
+        }
+
+        for (var collector : collectors) {
+            collector.collect(out);
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Writes the HELP and TYPE lines that start the samples of a metric family, for collectors.
+     */
+    public static void writeHeader(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Serves the metrics on the loopback interface only.
+     */
+    public static synchronized void serve(int port) throws IOException {
+        if (httpServer != null)
+            return;
+
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/metrics", exchange -> {
+            byte[] body = toText().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        httpServer.start();
+    }
+
+    public static synchronized void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+    }
+}
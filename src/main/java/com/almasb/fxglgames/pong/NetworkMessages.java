@@ -24,9 +24,36 @@ public class NetworkMessages {
     public static final String BAT1_FIRED_BALL = "BAT1_FIRED_BALL";
     public static final String BAT2_FIRED_BALL = "BAT2_FIRED_BALL";
 
+    /**
+     * Sent to a client when it is given a player slot, as "PLAYER1_CONNECT,token" unless resuming is turned off.
+     * After losing its connection, the client can send "RESUME,token" as the first message of a new connection
+     * within {@link ClientGroup#RESUME_GRACE_MS} to take the slot back.
+     */
     public static final String PLAYER1_CONNECT = "PLAYER1_CONNECT";
     public static final String PLAYER2_CONNECT = "PLAYER2_CONNECT";
 
+    public static final String RESUME = "RESUME";
+
     public static final String PLAYER1_QUIT  = "PLAYER1_QUIT";
     public static final String PLAYER2_QUIT  = "PLAYER2_QUIT";
+
+    /**
+     * Sent by binary clients to acknowledge the last snapshot they applied, as "ACK,sequence".
+     * Later snapshots are then sent as deltas against it.
+     */
+    public static final String ACK = "ACK";
+
+    /**
+     * Sent to every client as "UDP_TOKEN,token" when the server runs a {@link UdpChannel}.
+     * Clients echo it in a datagram to receive their snapshots over UDP.
+     */
+    public static final String UDP_TOKEN = "UDP_TOKEN";
+
+    /**
+     * Sent to every client as "PING,serverTime" every {@link RttEstimator#PING_INTERVAL_MS}.
+     * Clients answer straight away with "PONG,serverTime,clientTime", both non-negative times in microseconds,
+     * which gives the server the round trip time and clock offset of the connection.
+     */
+    public static final String PING = "PING";
+    public static final String PONG = "PONG";
 }
@@ -0,0 +1,267 @@
+package com.almasb.fxglgames.pong;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A connection served by one {@link NioServer} event loop.
+ *
+ * Reads and writes go through a pair of direct buffers owned by the connection.
+ * {@link #send(byte[])} may be called from any thread: it only queues the message and,
+ * if no flush is pending yet, asks the event loop to flush. A flush copies as many queued messages
+ * as fit into the write buffer and writes them without blocking; whatever the socket does not
+ * accept is written once the selector reports the channel as writable again.
+ * Until then the connection is backed up, see {@link #isBackedUp()}.
+ *
+ * Without framing ({@link Framing#RAW}) the reader cannot tell messages apart when they arrive together,
+ * so every message goes out in a write of its own, as the FXGL transport does.
+ */
+public class NioConnection {
+
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+    private final SocketChannel channel;
+    private final NioServer.EventLoop loop;
+    private final Framing framing;
+    private final NioServer.Handler handler;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(FrameDecoder.BUFFER_SIZE);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+    private final FrameDecoder decoder;
+    private final FrameDecoder.FrameHandler onFrame;
+
+    private final Queue<byte[]> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    // message currently being copied into the write buffer, only used by the loop thread
+    private byte[] current;
+    private int currentOffset;
+
+    private SelectionKey key;
+    private volatile boolean open = true;
+
+    private volatile boolean backedUp = false;
+    private volatile Runnable onDrained = () -> { };
+
+    NioConnection(SocketChannel channel, NioServer.EventLoop loop, Framing framing, NioServer.Handler handler) {
+        this.channel = channel;
+        this.loop = loop;
+        this.framing = framing;
+        this.handler = handler;
+
+        decoder = new FrameDecoder(readBuffer, framing);
+        onFrame = frame -> {
+            if (open) {
+                handler.onMessage(this, frame);
+            }
+        };
+    }
+
+    public Framing getFraming() {
+        return framing;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    void register(Selector selector) {
+        try {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+            handler.onConnected(this);
+        } catch (IOException e) {
+            System.out.println("Warning: Could not register connection: " + e);
+            close();
+        }
+    }
+
+    /**
+     * Queues a message, which is length-prefixed or newline-terminated according to the framing of the port.
+     * The array must not be modified afterwards.
+     */
+    public void send(byte[] message) {
+        if (!open)
+            return;
+
+        outbound.add(message);
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+    }
+
+    /**
+     * @return true while the socket is not keeping up, the callback set by
+     *         {@link #setOnDrained(Runnable)} is run once it has caught up
+     */
+    public boolean isBackedUp() {
+        return backedUp;
+    }
+
+    /**
+     * @param onDrained run on the event loop thread when a backed up connection has written everything
+     */
+    public void setOnDrained(Runnable onDrained) {
+        this.onDrained = onDrained;
+    }
+
+    /**
+     * Runs the task on the event loop thread of this connection.
+     */
+    public void execute(Runnable task) {
+        loop.execute(task);
+    }
+
+    /**
+     * Closes the connection from any thread.
+     */
+    public void terminate() {
+        loop.execute(this::close);
+    }
+
+    void read() {
+        try {
+            int numRead = channel.read(readBuffer);
+
+            if (numRead < 0) {
+                close();
+                return;
+            }
+
+            if (numRead > 0) {
+                decoder.decode(onFrame);
+            }
+        } catch (ProtocolException e) {
+            System.out.println("Warning: " + e.getMessage());
+            close();
+        } catch (IOException e) {
+            System.out.println("Warning: Connection could not be read.");
+            close();
+        }
+    }
+
+    void flush() {
+        // cleared first, so that a message queued from now on schedules another flush
+        flushScheduled.set(false);
+
+        if (!open)
+            return;
+
+        try {
+            while (true) {
+                fillWriteBuffer();
+
+                writeBuffer.flip();
+                write(writeBuffer);
+                boolean written = !writeBuffer.hasRemaining();
+                writeBuffer.compact();
+
+                if (!written) {
+                    // the socket buffer is full, continue when the selector says it is writable
+                    interest(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    backedUp = true;
+                    return;
+                }
+
+                if (current == null && outbound.isEmpty()) {
+                    interest(SelectionKey.OP_READ);
+
+                    if (backedUp) {
+                        backedUp = false;
+                        onDrained.run();
+                    }
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Warning: Connection could not be written.");
+            close();
+        }
+    }
+
+    /**
+     * Writes to the socket without blocking.
+     *
+     * @return number of bytes written, possibly 0
+     */
+    int write(ByteBuffer buffer) throws IOException {
+        return channel.write(buffer);
+    }
+
+    private void interest(int ops) {
+        // null until registered with the selector, writes before that are retried by the next flush
+        if (key != null) {
+            key.interestOps(ops);
+        }
+    }
+
+    private void fillWriteBuffer() {
+        while (writeBuffer.hasRemaining()) {
+            if (current == null) {
+                // a new message starts only if its length prefix fits
+                if (framing == Framing.LENGTH_PREFIXED && writeBuffer.remaining() < 2)
+                    return;
+
+                // an unframed message only starts once the one before it has been written in full
+                if (framing == Framing.RAW && writeBuffer.position() > 0)
+                    return;
+
+                current = outbound.poll();
+
+                if (current == null)
+                    return;
+
+                currentOffset = 0;
+
+                if (framing == Framing.LENGTH_PREFIXED) {
+                    writeBuffer.putShort((short) current.length);
+                }
+            }
+
+            int length = Math.min(writeBuffer.remaining(), current.length - currentOffset);
+            writeBuffer.put(current, currentOffset, length);
+            currentOffset += length;
+
+            if (currentOffset == current.length) {
+                // the delimiter of a line goes out with the next flush if the buffer is full
+                if (framing != Framing.LINE) {
+                    current = null;
+
+                    // an unframed message is written on its own
+                    if (framing == Framing.RAW)
+                        return;
+                } else if (writeBuffer.hasRemaining()) {
+                    writeBuffer.put((byte) '\n');
+                    current = null;
+                }
+            }
+        }
+    }
+
+    void close() {
+        if (!open)
+            return;
+
+        open = false;
+
+        if (key != null) {
+            key.cancel();
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Warning: " + e);
+        }
+
+        handler.onDisconnected(this);
+    }
+}
@@ -0,0 +1,211 @@
+package com.almasb.fxglgames.pong;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A non-blocking transport where a small, fixed set of event loop threads serve every connection,
+ * as an alternative to the thread-per-connection FXGL server. Each loop owns a {@link Selector}
+ * and does all reads and writes of its connections; other threads only queue data with
+ * {@link NioConnection#send(byte[])}. Incoming data is split into messages by a {@link FrameDecoder}
+ * for the {@link Framing} of the port and passed to the {@link Handler} on the loop thread.
+ */
+public class NioServer {
+
+    /**
+     * Number of event loop threads, can be overridden with the pong.ioThreads system property.
+     */
+    public static final int IO_THREADS = Integer.getInteger("pong.ioThreads", 2);
+
+    /**
+     * Callbacks are made on the event loop thread of the connection and must not block.
+     */
+    public interface Handler {
+
+        void onConnected(NioConnection connection);
+
+        /**
+         * @param frame message payload between position and limit, only valid during this call
+         */
+        void onMessage(NioConnection connection, ByteBuffer frame);
+
+        void onDisconnected(NioConnection connection);
+    }
+
+    private final EventLoop[] loops;
+    private final List<ServerSocketChannel> serverChannels = new ArrayList<>();
+
+    private int nextLoop = 0;
+
+    public NioServer(int numThreads) {
+        loops = new EventLoop[numThreads];
+    }
+
+    public void start() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+
+            var t = new Thread(loops[i], "nio-loop-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Starts accepting connections on the given port. Accepting is done by the first event loop,
+     * accepted connections are spread over all loops.
+     */
+    public void listen(int port, Framing framing, Handler handler) throws IOException {
+        var serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(port));
+
+        serverChannels.add(serverChannel);
+
+        loops[0].execute(() -> {
+            try {
+                serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT, new Acceptor(serverChannel, framing, handler));
+            } catch (ClosedChannelException e) {
+                System.out.println("Warning: Could not listen on port " + port + ": " + e);
+            }
+        });
+    }
+
+    public void stop() {
+        for (var serverChannel : serverChannels) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                System.out.println("Warning: " + e);
+            }
+        }
+
+        for (var loop : loops) {
+            loop.stop();
+        }
+    }
+
+    private EventLoop nextLoop() {
+        var loop = loops[nextLoop];
+        nextLoop = (nextLoop + 1) % loops.length;
+        return loop;
+    }
+
+    private class Acceptor {
+
+        private final ServerSocketChannel serverChannel;
+        private final Framing framing;
+        private final Handler handler;
+
+        Acceptor(ServerSocketChannel serverChannel, Framing framing, Handler handler) {
+            this.serverChannel = serverChannel;
+            this.framing = framing;
+            this.handler = handler;
+        }
+
+        void accept() throws IOException {
+            SocketChannel channel;
+
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+
+                var loop = nextLoop();
+                var connection = new NioConnection(channel, loop, framing, handler);
+
+                loop.execute(() -> connection.register(loop.selector));
+            }
+        }
+    }
+
+    static class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        private volatile boolean running = true;
+
+        EventLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        /**
+         * Runs the task on this loop's thread.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void stop() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    var keys = selector.selectedKeys();
+
+                    for (var key : keys) {
+                        handle(key);
+                    }
+
+                    keys.clear();
+                } catch (Exception e) {
+                    System.out.println("Warning: Event loop error: " + e);
+                }
+            }
+
+            try {
+                for (var key : selector.keys()) {
+                    key.channel().close();
+                }
+
+                selector.close();
+            } catch (IOException e) {
+                System.out.println("Warning: " + e);
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            if (!key.isValid())
+                return;
+
+            var attachment = key.attachment();
+
+            if (attachment instanceof Acceptor) {
+                try {
+                    ((Acceptor) attachment).accept();
+                } catch (IOException e) {
+                    System.out.println("Warning: Could not accept connection: " + e);
+                }
+                return;
+            }
+
+            var connection = (NioConnection) attachment;
+
+            if (key.isReadable()) {
+                connection.read();
+            }
+
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.almasb.fxglgames.pong;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Messages waiting to be written to one client, so that the game loop never writes to a socket itself.
+ *
+ * Events are reliable and written in the order they were queued. Snapshots are coalesced:
+ * only the newest pending snapshot is written, after the events queued before it.
+ * Nothing is written until {@link #flush()}, which writes everything pending as one batch,
+ * so that the events and snapshot of a tick go out together.
+ * A client whose events pile up beyond {@link #MAX_PENDING_EVENTS} is lagging and is either
+ * disconnected or, with -Dpong.onLag=drop, loses the events that do not fit.
+ *
+ * The outbox is drained on the given executor, never by two threads at once.
+ */
+public class Outbox<T> {
+
+    public static final int MAX_PENDING_EVENTS = Integer.getInteger("pong.maxPendingEvents", 256);
+
+    public static final boolean DROP_ON_LAG = "drop".equals(System.getProperty("pong.onLag"));
+
+    private static final Metrics.Counter DROPPED_EVENTS = Metrics.counter("pong_events_dropped_total", "Events not sent because the client was lagging");
+    private static final Metrics.Counter DROPPED_SNAPSHOTS = Metrics.counter("pong_snapshots_dropped_total", "Snapshots replaced by a newer one before they were written");
+
+    /**
+     * Writes messages to the connection.
+     */
+    public interface Sink<T> {
+
+        /**
+         * @return false if the connection is backed up, in which case pending messages
+         *         are kept until the next {@link #flush()}
+         */
+        default boolean isReady() {
+            return true;
+        }
+
+        /**
+         * Writes the messages in order, ideally with a single write to the socket.
+         * The list is reused once the call returns.
+         */
+        void write(List<T> batch);
+    }
+
+    private final Executor writer;
+    private final Sink<T> sink;
+    private final Runnable terminate;
+
+    private final Queue<T> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingEvents = new AtomicInteger();
+    private final AtomicReference<T> snapshot = new AtomicReference<>();
+
+    // only used by the thread running the drain
+    private final List<T> batch = new ArrayList<>();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile boolean closing = false;
+    private volatile boolean closed = false;
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong droppedSnapshots = new AtomicLong();
+
+    /**
+     * @param writer runs the drain, e.g. a writer thread pool or the event loop of the connection
+     * @param terminate closes the connection, called once the outbox is closed or the client is lagging
+     */
+    public Outbox(Executor writer, Sink<T> sink, Runnable terminate) {
+        this.writer = writer;
+        this.sink = sink;
+        this.terminate = terminate;
+    }
+
+    public void event(T message) {
+        if (closing)
+            return;
+
+        if (pendingEvents.incrementAndGet() > MAX_PENDING_EVENTS) {
+            pendingEvents.decrementAndGet();
+            droppedEvents.incrementAndGet();
+            DROPPED_EVENTS.increment();
+
+            if (!DROP_ON_LAG) {
+                System.out.println("Warning: Client is lagging behind by " + MAX_PENDING_EVENTS + " events, disconnecting.");
+                closing = true;
+                terminateOnce();
+            }
+            return;
+        }
+
+        events.add(message);
+    }
+
+    /**
+     * Replaces the pending snapshot, if any, with the given one.
+     */
+    public void snapshot(T message) {
+        if (closing)
+            return;
+
+        if (snapshot.getAndSet(message) != null) {
+            droppedSnapshots.incrementAndGet();
+            DROPPED_SNAPSHOTS.increment();
+        }
+    }
+
+    /**
+     * Terminates the connection once the events queued so far have been written.
+     */
+    public void close() {
+        closing = true;
+        flush();
+    }
+
+    /**
+     * Schedules a drain, unless one is already pending. Called once per tick by the {@link ClientGroup},
+     * and again by the connection once it can take more.
+     */
+    public void flush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            writer.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            boolean blocked = !writePending();
+
+            // cleared before checking for more, so that a message queued from now on schedules another drain
+            flushScheduled.set(false);
+
+            if (blocked || closed)
+                return;
+
+            if (events.isEmpty() && snapshot.get() == null) {
+                if (closing) {
+                    terminateOnce();
+                }
+                return;
+            }
+
+            if (!flushScheduled.compareAndSet(false, true))
+                return;
+        }
+    }
+
+    private boolean writePending() {
+        if (closed || !sink.isReady())
+            return false;
+
+        T message;
+
+        while ((message = events.poll()) != null) {
+            batch.add(message);
+            pendingEvents.decrementAndGet();
+        }
+
+        message = snapshot.getAndSet(null);
+
+        // a closing outbox only writes its events
+        if (message != null && !closing) {
+            batch.add(message);
+        }
+
+        if (!batch.isEmpty()) {
+            sink.write(batch);
+            batch.clear();
+        }
+
+        return true;
+    }
+
+    private synchronized void terminateOnce() {
+        if (!closed) {
+            closed = true;
+            terminate.run();
+        }
+    }
+
+    /**
+     * @return true if a snapshot is queued but not yet written
+     */
+    public boolean hasPendingSnapshot() {
+        return snapshot.get() != null;
+    }
+
+    /**
+     * @return number of events queued but not yet written
+     */
+    public int getPendingEvents() {
+        return pendingEvents.get();
+    }
+
+    /**
+     * @return number of events dropped because the client was lagging
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * @return number of snapshots replaced by a newer one before they were written
+     */
+    public long getDroppedSnapshots() {
+        return droppedSnapshots.get();
+    }
+}
@@ -30,23 +30,20 @@ import com.almasb.fxgl.animation.Interpolators;
 import com.almasb.fxgl.app.ApplicationMode;
 import com.almasb.fxgl.app.GameApplication;
 import com.almasb.fxgl.app.GameSettings;
-import com.almasb.fxgl.core.math.FXGLMath;
 import com.almasb.fxgl.entity.Entity;
 import com.almasb.fxgl.entity.SpawnData;
-import com.almasb.fxgl.input.UserAction;
-import com.almasb.fxgl.net.*;
 import com.almasb.fxgl.physics.CollisionHandler;
 import com.almasb.fxgl.physics.HitBox;
 import com.almasb.fxgl.ui.UI;
-import javafx.scene.input.KeyCode;
+import javafx.application.Platform;
 import javafx.scene.paint.Color;
 import javafx.util.Duration;
 
-import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Random;
 
 import static com.almasb.fxgl.dsl.FXGL.*;
 import static com.almasb.fxglgames.pong.NetworkMessages.*;
@@ -57,7 +54,7 @@ import static com.almasb.fxglgames.pong.NetworkMessages.*;
  *
  * @author Almas Baimagambetov (AlmasB) (almaslvl@gmail.com)
  */
-public class PongApp extends GameApplication implements MessageHandler<String> {
+public class PongApp extends GameApplication implements Lobby, PongServer.Listener {
 
     @Override
     protected void initSettings(GameSettings settings) {
@@ -67,93 +64,67 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
         settings.setApplicationMode(ApplicationMode.DEBUG);
     }
 
+    /**
+     * The match is simulated by {@link Match} and its {@link SweptPhysics}, as on the headless server,
+     * and the entities only mirror it. With -Dpong.physics=box2d Box2D moves the balls instead, which FXGL
+     * steps once per rendered frame, so only the velocities set by the tick follow the fixed tick rate.
+     */
+    public static final boolean SWEPT_PHYSICS = !"box2d".equals(System.getProperty("pong.physics"));
+
     private Entity player1;
     private Entity player2;
     private BatComponent player1Bat;
     private BatComponent player2Bat;
-    private int playerConnectionFlag = 0;
-    private int enemyConnectionFlag = 0;
-    private int playerInputFlag = 0;
-    private int enemyInputFlag = 0;
-    private int playerBallFlag = 0;
-    private int enemyBallFlag = 0;
 
-    private Server<String> server;
+    private final PongFactory factory = new PongFactory();
 
-    @Override
-    protected void initInput() {
-        /**Player controls including LR movement and firing.
-         *
-         * @author
-         * E.R.Walker (E.walker5@uni.brighton.ac.uk)
-         */
-        getInput().addAction(new UserAction("Left"){
-            @Override
-            protected void onAction(){
-                if(playerConnectionFlag == 1 && playerInputFlag == 1){
-                    player1Bat.left();
-                }
+    private final PongServer server = new PongServer(this);
+    private final ClientGroup clients = new ClientGroup(this, Platform::runLater, true);
 
-                if (enemyConnectionFlag == 1 && enemyInputFlag == 1){
-                    player2Bat.left();
-                }
-            }
+    private final Snapshot snapshot = new Snapshot();
 
-            @Override
-            protected void onActionEnd(){
-                if(playerConnectionFlag == 1 && playerInputFlag == 0){
-                    System.out.println("Player 1 told to stop moving left.");
-                    player1Bat.stop();
-                }
+    private final Match match = new Match(this::onMatchEvent);
+    private final List<Entity> matchBalls = new ArrayList<>();
 
-                if (enemyConnectionFlag == 1  && enemyInputFlag == 0){
-                    System.out.println("Player 2 told to stop moving left.");
-                    player2Bat.stop();
-                }
-            }
-        }, KeyCode.A);
+    // seeded, so that a recorded match looks the same when it is played again
+    private final Random random = new Random(Long.getLong("pong.seed", 0));
 
-        getInput().addAction(new UserAction("Right"){
-            @Override
-            protected void onAction(){
-                if(playerConnectionFlag == 1 && playerInputFlag == 1){
-                    player1Bat.right();
-                }
+    private final TickScheduler scheduler = new TickScheduler(
+            TickScheduler.TICK_RATE, TickScheduler.SNAPSHOT_RATE, TickScheduler.MAX_CATCH_UP_TICKS,
+            this::tick, this::sendSnapshot);
 
-                if (enemyConnectionFlag == 1  && enemyInputFlag == 1){
-                    player2Bat.right();
-                }
-            }
+    /**Player controls including LR movement and firing,
+     * applied to the bat of the player that sent them.
+     *
+     * @author
+     * E.R.Walker (E.walker5@uni.brighton.ac.uk)
+     */
+    private final InputBuffer.Target bats = new InputBuffer.Target() {
+        @Override
+        public void left(int player) {
+            getBat(player).left();
+        }
 
-            @Override
-            protected void onActionEnd(){
-                if(playerConnectionFlag == 1 && playerInputFlag == 0){
-                    System.out.println("Player 1 told to stop moving right.");
-                    player1Bat.stop();
-                }
+        @Override
+        public void right(int player) {
+            getBat(player).right();
+        }
 
-                if (enemyConnectionFlag == 1  && enemyInputFlag == 0){
-                    System.out.println("Player 2 told to stop moving right.");
-                    player2Bat.stop();
-                }
+        @Override
+        public void stop(int player) {
+            if (Log.isEnabled(Log.Level.DEBUG)) {
+                System.out.println("Player " + (player + 1) + " told to stop moving.");
             }
-        }, KeyCode.D);
 
-        getInput().addAction(new UserAction("Fire") {
-            @Override
-            protected void onActionBegin(){
-                if(playerConnectionFlag == 1 && playerInputFlag == 1){
-                    player1Bat.fire();
-                    server.broadcast(BAT1_FIRED_BALL);
-                }
+            getBat(player).stop();
+        }
 
-                if (enemyConnectionFlag == 1 && enemyInputFlag == 1){
-                    player2Bat.fire();
-                    server.broadcast(BAT2_FIRED_BALL);
-                }
-            }
-        }, KeyCode.W);
-    }
+        @Override
+        public void fire(int player) {
+            getBat(player).fire();
+            clients.broadcast(player == Snapshot.PLAYER1 ? BAT1_FIRED_BALL : BAT2_FIRED_BALL);
+        }
+    };
 
     @Override
     protected void initGameVars(Map<String, Object> vars) {
@@ -163,36 +134,13 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
 
     @Override
     protected void initGame() {
-        // creates a writer and reader for the server to use when communicating with clients.
-        Writers.INSTANCE.addTCPWriter(String.class, outputStream -> new MessageWriterS(outputStream));
-        Readers.INSTANCE.addTCPReader(String.class, in -> new MessageReaderS(in));
-
-        // initializes the server.
-        server = getNetService().newTCPServer(55555, new ServerConfig<>(String.class));
-
-        // Detects when a client connects to the server.
-        server.setOnConnected(connection -> {
-            connection.addMessageHandlerFX(this);
-            server.broadcast("Number of players connected is now: " + server.getConnections().size());
-
-            if(server.getConnections().size() == 1){
-                playerConnectionFlag = 1;
-                connection.send(PLAYER1_CONNECT);
-            } else if (server.getConnections().size() == 2){
-                enemyConnectionFlag = 1;
-                connection.send(PLAYER2_CONNECT);
-            }
-        });
-
-        getGameWorld().addEntityFactory(new PongFactory());
+        getGameWorld().addEntityFactory(factory);
         getGameScene().setBackgroundColor(Color.rgb(100, 100, 100));
 
         initScreenBounds();
         initGameObjects();
 
-        var t = new Thread(server.startTask()::run);
-        t.setDaemon(true);
-        t.start();
+        server.start(getNetService());
     }
 
     @Override
@@ -202,13 +150,13 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
         getPhysicsWorld().addCollisionHandler(new CollisionHandler(EntityType.BALL, EntityType.WALL) {
             protected void onHitBoxTrigger(Entity a, Entity b, HitBox boxA, HitBox boxB) {
                 if (boxB.getName().equals("BOT")) {
-                    server.broadcast(HIT_WALL_DOWN);
+                    clients.broadcast(HIT_WALL_DOWN);
                 } else if (boxB.getName().equals("TOP")) {
-                    server.broadcast(HIT_WALL_UP);
+                    clients.broadcast(HIT_WALL_UP);
                 } else if (boxB.getName().equals("LEFT")) {
-                    server.broadcast(HIT_WALL_LEFT);
+                    clients.broadcast(HIT_WALL_LEFT);
                 } else if (boxB.getName().equals("RIGHT")) {
-                    server.broadcast(HIT_WALL_RIGHT);
+                    clients.broadcast(HIT_WALL_RIGHT);
                 }
             }
         });
@@ -226,19 +174,19 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
             protected void onCollisionBegin(Entity ball, Entity bat) {
                 if( bat == player1  &&
                     ball == player2Bat.ball){
-                    ball.removeFromWorld();
+                    factory.getBullets().release(ball);
                     getGameScene().getViewport().shakeTranslational(5);
                     inc("player2score", +1);
                     player2Bat.reload();
                 } else if(  bat == player2  &&
                             ball == player1Bat.ball) {
-                    ball.removeFromWorld();
+                    factory.getBullets().release(ball);
                     getGameScene().getViewport().shakeTranslational(5);
                     inc("player1score", +1);
                     player1Bat.reload();
                 }
                 playHitAnimation(bat);
-                server.broadcast(bat == player1 ? BALL_HIT_BAT1 : BALL_HIT_BAT2);
+                clients.broadcast(bat == player1 ? BALL_HIT_BAT1 : BALL_HIT_BAT2);
             }
         };
 
@@ -257,54 +205,124 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
         getGameScene().addUI(ui);
     }
 
-    //Sends server data to the client(s) via a message.
+    // The frame only drives the scheduler, which runs ticks and snapshots at their own fixed rates.
+    // Everything sent since the previous frame then goes out in one batch per client.
     @Override
     protected void onUpdate(double tpf) {
-        System.out.println("Server connections: " + server.getConnections().size());
-
-        if (!server.getConnections().isEmpty()) {
-
-            var message = "GAME_DATA,"
-                    + player1.getX()
-                    + ","
-                    + player2.getX()
-                    + ","
-                    + getip("player1score").get()
-                    + ","
-                    + getip("player2score").get()
-                    + ","
-                    + playerBallFlag
-                    + ","
-                    + enemyBallFlag;
-
-            /**Concatenates the message for the balls only
-             * once they've been spawned (not null). This
-             * avoids a NullPointerException being thrown
-             * by the JRE during client runtime.
-             *
-             * @author
-             * E.R.Walker (E.walker5@uni.brighton.ac.uk)
-             */
-            if(player1Bat.ball != null){
-                playerBallFlag = 1;
-                message += ","
-                        + player1Bat.ball.getX()
-                        + ","
-                        + player1Bat.ball.getY();
-            } else {
-                playerBallFlag = 0;
+        if (Log.isEnabled(Log.Level.DEBUG)) {
+            System.out.println("Server connections: " + server.getNumConnections());
+        }
+
+        scheduler.update();
+        clients.flush();
+    }
+
+    private BatComponent getBat(int player) {
+        return player == Snapshot.PLAYER1 ? player1Bat : player2Bat;
+    }
+
+    private void tick(double dt) {
+        if (SWEPT_PHYSICS) {
+            clients.getInput().apply(match);
+
+            for (int player = 0; player < 2; player++) {
+                match.setRewind(player, (int) Math.round(clients.getViewDelay(player) / dt));
             }
 
-            if(player2Bat.ball != null){
-                enemyBallFlag = 1;
-                message += ","
-                        + player2Bat.ball.getX()
-                        + ","
-                        + player2Bat.ball.getY();
+            match.step(dt);
+            mirrorMatch();
+            return;
+        }
+
+        factory.getBullets().update();
+        clients.getInput().apply(bats);
+
+        player1Bat.tick(dt);
+        player2Bat.tick(dt);
+
+        if (player1Bat.ball != null) {
+            player1Bat.ball.getComponent(BallComponent.class).tick(dt);
+        }
+
+        if (player2Bat.ball != null) {
+            player2Bat.ball.getComponent(BallComponent.class).tick(dt);
+        }
+    }
+
+    private void mirrorMatch() {
+        player1Bat.moveTo(match.getBatX(Snapshot.PLAYER1));
+        player2Bat.moveTo(match.getBatX(Snapshot.PLAYER2));
+
+        Projectiles balls = match.getBalls();
+
+        // ball entities are spawned as needed and hidden rather than removed when there are fewer balls
+        for (int i = 0; i < balls.size(); i++) {
+            if (i == matchBalls.size()) {
+                matchBalls.add(spawn("sweptBall", balls.getX(i), balls.getY(i)));
             } else {
-                enemyBallFlag = 0;
+                matchBalls.get(i).setPosition(balls.getX(i), balls.getY(i));
+                matchBalls.get(i).setVisible(true);
             }
-            server.broadcast(message);
+        }
+
+        for (int i = balls.size(); i < matchBalls.size(); i++) {
+            matchBalls.get(i).setVisible(false);
+        }
+    }
+
+    private void onMatchEvent(String event) {
+        clients.broadcast(event);
+
+        if (event.equals(BALL_HIT_BAT1) || event.equals(BALL_HIT_BAT2)) {
+            playHitAnimation(event.equals(BALL_HIT_BAT1) ? player1 : player2);
+
+            if (geti("player1score") != match.getScore(Snapshot.PLAYER1) || geti("player2score") != match.getScore(Snapshot.PLAYER2)) {
+                getGameScene().getViewport().shakeTranslational(5);
+                set("player1score", match.getScore(Snapshot.PLAYER1));
+                set("player2score", match.getScore(Snapshot.PLAYER2));
+            }
+        }
+    }
+
+    private void sendSnapshot() {
+        if (!clients.isEmpty()) {
+            captureSnapshot();
+            clients.sendSnapshot(snapshot);
+        }
+    }
+
+    private void captureSnapshot() {
+        snapshot.setSequence(snapshot.getSequence() + 1);
+        clients.getInput().capture(snapshot);
+
+        if (SWEPT_PHYSICS) {
+            match.capture(snapshot);
+            return;
+        }
+
+        snapshot.setBatX(Snapshot.PLAYER1, player1.getX());
+        snapshot.setBatX(Snapshot.PLAYER2, player2.getX());
+        snapshot.setScore(Snapshot.PLAYER1, getip("player1score").get());
+        snapshot.setScore(Snapshot.PLAYER2, getip("player2score").get());
+
+        /**Includes the balls only once they've been
+         * spawned (not null). This avoids a
+         * NullPointerException being thrown by the
+         * JRE during client runtime.
+         *
+         * @author
+         * E.R.Walker (E.walker5@uni.brighton.ac.uk)
+         */
+        if(player1Bat.ball != null){
+            snapshot.setBall(Snapshot.PLAYER1, player1Bat.ball.getX(), player1Bat.ball.getY());
+        } else {
+            snapshot.clearBall(Snapshot.PLAYER1);
+        }
+
+        if(player2Bat.ball != null){
+            snapshot.setBall(Snapshot.PLAYER2, player2Bat.ball.getX(), player2Bat.ball.getY());
+        } else {
+            snapshot.clearBall(Snapshot.PLAYER2);
         }
     }
 
@@ -349,110 +367,46 @@ public class PongApp extends GameApplication implements MessageHandler<String> {
                 .duration(Duration.seconds(0.5))
                 .interpolator(Interpolators.BOUNCE.EASE_OUT())
                 .rotate(bat)
-                .from(FXGLMath.random(-25, 25))
+                .from(random.nextInt(51) - 25)
                 .to(0)
                 .buildAndPlay();
     }
 
-    //Processes input from the client(s) and maps it to input here on the server.
+    // every client joins the one match, clients after the first two only watch
     @Override
-    public void onReceive(Connection<String> connection, String message) {
-        var tokens = message.split(",");
-        Arrays.stream(tokens).skip(1).forEach(key -> {
-            //Detects input from a client based on their connection number.
-
-            if (key.endsWith("_PLAYERDOWN")) {
-                playerInputFlag = 1;
-                getInput().mockKeyPress(KeyCode.valueOf(key.substring(0, 1)));
-            } else if (key.endsWith("_PLAYERUP")) {
-                playerInputFlag = 0;
-                getInput().mockKeyRelease(KeyCode.valueOf(key.substring(0, 1)));
-            } else if(key.endsWith("PLAYERQUIT")){
-                connection.send(PLAYER1_QUIT);
-                connection.terminate();
-                System.out.println("Player 1 Quit.");
-            }
-
-            if(key.endsWith("_ENEMYDOWN")){
-                enemyInputFlag = 1;
-                getInput().mockKeyPress(KeyCode.valueOf(key.substring(0, 1)));
-            } else if(key.endsWith("_ENEMYUP")){
-                enemyInputFlag = 0;
-                getInput().mockKeyRelease(KeyCode.valueOf(key.substring(0, 1)));
-            } else if(key.endsWith("ENEMYQUIT")){
-                connection.send(PLAYER2_QUIT);
-                connection.terminate();
-                System.out.println("Player 2 Quit.");
-            }
-        });
+    public void onConnected(Client client) {
+        clients.join(client);
     }
 
-    static class MessageWriterS implements TCPMessageWriter<String> {
-
-        private OutputStream os;
-        private PrintWriter out;
-
-        MessageWriterS(OutputStream os) {
-            this.os = os;
-            out = new PrintWriter(os, true);
-        }
-
-        @Override
-        public void write(String s) throws Exception {
-            out.print(s.toCharArray());
-            out.flush();
-        }
+    @Override
+    public void onDisconnected(Client client) {
+        clients.leave(client);
     }
 
-    static class MessageReaderS implements TCPMessageReader<String> {
-
-        private BlockingQueue<String> messages = new ArrayBlockingQueue<>(50);
-
-        private InputStreamReader in;
-
-        MessageReaderS(InputStream is) {
-            in =  new InputStreamReader(is);
-
-            var t = new Thread(() -> {
-                try {
-
-                    char[] buf = new char[36];
-
-                    int len;
-
-                    while ((len = in.read(buf)) > 0) {
-                        var message = new String(Arrays.copyOf(buf, len));
-
-                        System.out.println("Recv message: " + message);
-
-                        messages.put(message);
-                    }
-
-                } catch (Exception e) {
-                    System.out.println("Warning: Connection could not be read.");
-                    // Once length of the buffer is 0, this implies a connection has been terminated.
-                    // The last message they would have send would have been a quit message to trigger the disconnect.
-                    messages.add("QUIT");
-                }
-            });
+    // a client whose token is not accepted keeps the slot or seat it was given on connect
+    @Override
+    public void onResume(Client client, long token) {
+        clients.resume(client, token);
+    }
 
-            t.setDaemon(true);
-            t.start();
-        }
+    @Override
+    public void onPlayerConnected(int player) {
+        System.out.println("Player " + (player + 1) + " connected.");
+    }
 
-        @Override
-        public String read() throws Exception {
-            // Assigns the message at the end of the queue to a String variable and compares it to the QUIT command
-            String message = messages.take();
-            if(message.equals("QUIT")){
-                System.out.println("Handling EOFException.");
-                throw new EOFException();
-            }
-            return message;
-        }
+    @Override
+    public void onPlayerResumed(int player) {
+        System.out.println("Player " + (player + 1) + " reconnected.");
     }
 
-    public static void main(String[] args) {
-        launch(args);
+    /**
+     * Pass --headless to run the server without a window, see {@link HeadlessServer}.
+     */
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--headless")) {
+            HeadlessServer.main(args);
+        } else {
+            launch(args);
+        }
     }
 }
@@ -31,11 +31,19 @@ import com.almasb.fxgl.entity.EntityFactory;
 import com.almasb.fxgl.entity.SpawnData;
 import com.almasb.fxgl.entity.Spawns;
 import com.almasb.fxgl.entity.components.CollidableComponent;
+import com.almasb.fxgl.physics.BoundingShape;
+import com.almasb.fxgl.physics.HitBox;
 import com.almasb.fxgl.physics.PhysicsComponent;
 import com.almasb.fxgl.physics.box2d.dynamics.BodyType;
 import com.almasb.fxgl.physics.box2d.dynamics.FixtureDef;
+import javafx.geometry.Point2D;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.almasb.fxgl.dsl.FXGL.entityBuilder;
+import static com.almasb.fxgl.dsl.FXGL.spawn;
 import static com.almasb.fxgl.dsl.FXGL.texture;
 import static com.almasb.fxgl.dsl.FXGLForKtKt.getip;
 
@@ -44,6 +52,12 @@ import static com.almasb.fxgl.dsl.FXGLForKtKt.getip;
  */
 public class PongFactory implements EntityFactory {
 
+    private final BulletPool bullets = new BulletPool();
+
+    public BulletPool getBullets() {
+        return bullets;
+    }
+
     @Spawns("ball")
     public Entity newBall(SpawnData data) {
         PhysicsComponent physics = new PhysicsComponent();
@@ -52,13 +66,26 @@ public class PongFactory implements EntityFactory {
 
         return entityBuilder(data)
                 .type(EntityType.BALL)
-                .viewWithBBox(texture("bullet.png", 15, 15))
+                .bbox(new HitBox(BoundingShape.box(Match.BALL_SIZE, Match.BALL_SIZE)))
+                .view(texture("bullet.png", Match.BALL_SIZE, Match.BALL_SIZE))
                 .with(physics)
                 .with(new CollidableComponent(true))
                 .with(new BallComponent())
                 .build();
     }
 
+    /**
+     * A ball that is only drawn, its motion and collisions are simulated by {@link Match}.
+     */
+    @Spawns("sweptBall")
+    public Entity newSweptBall(SpawnData data) {
+        return entityBuilder(data)
+                .type(EntityType.BALL)
+                .bbox(new HitBox(BoundingShape.box(Match.BALL_SIZE, Match.BALL_SIZE)))
+                .view(texture("bullet.png", Match.BALL_SIZE, Match.BALL_SIZE))
+                .build();
+    }
+
     @Spawns("bat")
     public Entity newBat(SpawnData data) {
         boolean isPlayer = data.get("isPlayer");
@@ -70,10 +97,95 @@ public class PongFactory implements EntityFactory {
 
         return entityBuilder(data)
                 .type(isPlayer ? EntityType.PLAYER_BAT : EntityType.ENEMY_BAT)
-                .viewWithBBox(texture("tank.png", 100, 100))
+                .bbox(new HitBox(BoundingShape.box(Match.BAT_SIZE, Match.BAT_SIZE)))
+                .view(texture("tank.png", Match.BAT_SIZE, Match.BAT_SIZE))
                 .with(new CollidableComponent(true))
                 .with(physics)
-                .with(new BatComponent())
+                .with(new BatComponent(bullets))
                 .build();
     }
+
+    /**
+     * Reuses "ball" entities, so that firing and scoring in steady state create and destroy no entities or Box2D bodies.
+     *
+     * A released bullet stays in the world, hidden and not collidable. Its body is deactivated on the next
+     * {@link #update()}, outside the physics step, since bullets are usually released from a collision handler.
+     */
+    public static class BulletPool {
+
+        private static final Metrics.Counter HITS = Metrics.counter("pong_bullet_pool_hits_total", "Bullets fired by reusing a pooled entity");
+        private static final Metrics.Counter MISSES = Metrics.counter("pong_bullet_pool_misses_total", "Bullets fired by spawning a new entity");
+
+        private final ArrayDeque<Entity> dormant = new ArrayDeque<>();
+        private final List<Entity> released = new ArrayList<>();
+
+        private long hits = 0;
+        private long misses = 0;
+
+        /**
+         * @return a bullet at the given position, at rest and ready to be given a velocity
+         */
+        public Entity acquire(double x, double y) {
+            Entity bullet = dormant.pollFirst();
+
+            if (bullet == null) {
+                misses++;
+                MISSES.increment();
+                return spawn("ball", x, y);
+            }
+
+            hits++;
+            HITS.increment();
+
+            PhysicsComponent physics = bullet.getComponent(PhysicsComponent.class);
+            physics.getBody().setActive(true);
+            physics.overwritePosition(new Point2D(x, y));
+            physics.setLinearVelocity(0, 0);
+
+            bullet.getComponent(CollidableComponent.class).setValue(true);
+            bullet.setVisible(true);
+            return bullet;
+        }
+
+        public void release(Entity bullet) {
+            bullet.setVisible(false);
+            bullet.getComponent(CollidableComponent.class).setValue(false);
+            released.add(bullet);
+        }
+
+        /**
+         * Puts the bullets released since the last call to sleep. Called once per tick, outside the physics step.
+         */
+        public void update() {
+            for (int i = 0; i < released.size(); i++) {
+                Entity bullet = released.get(i);
+
+                PhysicsComponent physics = bullet.getComponent(PhysicsComponent.class);
+                physics.setLinearVelocity(0, 0);
+                physics.getBody().setActive(false);
+
+                dormant.addLast(bullet);
+            }
+
+            released.clear();
+        }
+
+        /**
+         * @return number of bullets fired by reusing a pooled entity
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return number of bullets fired by spawning a new entity
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        public int getDormant() {
+            return dormant.size();
+        }
+    }
 }
@@ -0,0 +1,534 @@
+package com.almasb.fxglgames.pong;
+
+import com.almasb.fxgl.net.*;
+
+import java.io.*;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Networking side of the game: accepts text and binary clients, hands them to the {@link Lobby}
+ * and records their {@link Command}s in the input of the group they joined.
+ * Connections are served either by the FXGL TCP servers (the default) or, with -Dpong.transport=nio,
+ * by an {@link NioServer} with a fixed number of event loop threads.
+ * It has no dependency on the scene graph, so it serves both the windowed {@link PongApp}
+ * and the {@link HeadlessServer}.
+ */
+public class PongServer {
+
+    /**
+     * Clients choose the wire format by the port they connect to:
+     * the original comma separated text protocol, or length-prefixed binary frames (see {@link SnapshotCodec}).
+     */
+    public static final int TEXT_PORT = 55555;
+    public static final int BINARY_PORT = 55556;
+
+    public static final boolean USE_NIO = "nio".equals(System.getProperty("pong.transport"));
+
+    /**
+     * Text messages in both directions are terminated by '\n', unless the server is started with -Dpong.textFraming=raw
+     * for clients that predate framing, in which case they are not delimited at all.
+     */
+    public static final Framing TEXT_FRAMING = "raw".equals(System.getProperty("pong.textFraming")) ? Framing.RAW : Framing.LINE;
+
+    /**
+     * How long a new client waits before the lobby gives it a slot, so that a reconnecting player whose first message
+     * is RESUME takes its own slot back rather than a free one, can be overridden with the pong.matchDelayMs system property.
+     * Without resume tokens there is nothing to wait for.
+     */
+    public static final int MATCH_DELAY_MS = Integer.getInteger("pong.matchDelayMs", ClientGroup.RESUME_GRACE_MS > 0 ? 200 : 0);
+
+    private static final ScheduledExecutorService MATCHMAKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        var t = new Thread(r, "pong-matchmaker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Drains the {@link Outbox}es of FXGL clients. Their writes block, so a slow client
+     * only holds up its own writer thread rather than the game loop or other clients.
+     */
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(r -> {
+        var t = new Thread(r, "pong-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Is told about players joining a {@link ClientGroup}, through the group's executor.
+     * Player input is not passed to the listener, it is read from {@link ClientGroup#getInput()} at tick time.
+     */
+    public interface Listener {
+
+        void onPlayerConnected(int player);
+
+        /**
+         * Called when a player has taken its slot back with a resume token, see {@link ClientGroup#resume(Client, long)}.
+         */
+        default void onPlayerResumed(int player) { }
+    }
+
+    private static final Metrics.Counter CONNECTIONS_OPENED = Metrics.counter("pong_connections_opened_total", "Client connections accepted");
+    private static final Metrics.Counter CONNECTIONS_CLOSED = Metrics.counter("pong_connections_closed_total", "Client connections closed");
+
+    private final Lobby lobby;
+
+    private Server<Frame> server;
+    private Server<byte[]> binaryServer;
+    private NioServer nioServer;
+    private UdpChannel udp;
+
+    // keyed by the FXGL or NIO connection of the client
+    private final Map<Object, Client> clients = new ConcurrentHashMap<>();
+
+    public PongServer(Lobby lobby) {
+        this.lobby = lobby;
+    }
+
+    public void start(NetService netService) {
+        Metrics.gauge("pong_connections", "Clients currently connected", clients::size);
+        Metrics.gauge("pong_pending_events", "Events queued for all clients but not yet written",
+                () -> clients.values().stream().mapToInt(client -> client.getOutbox().getPendingEvents()).sum());
+        Metrics.addCollector(out -> Client.collectMetrics(out, clients.values()));
+
+        if (Metrics.PORT > 0) {
+            try {
+                Metrics.serve(Metrics.PORT);
+            } catch (IOException e) {
+                System.out.println("Warning: Could not serve metrics: " + e);
+            }
+        }
+
+        if (UdpChannel.ENABLED) {
+            try {
+                udp = new UdpChannel();
+                udp.start(UdpChannel.PORT);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not start UDP channel", e);
+            }
+        }
+
+        if (USE_NIO) {
+            startNio();
+        } else {
+            startFXGL(netService);
+        }
+    }
+
+    private void startNio() {
+        NioServer.Handler handler = new NioServer.Handler() {
+            @Override
+            public void onConnected(NioConnection connection) {
+                PongServer.this.onConnected(connection, new NioClient(connection));
+            }
+
+            @Override
+            public void onMessage(NioConnection connection, ByteBuffer frame) {
+                var client = (NioClient) clients.get(connection);
+
+                if (client == null)
+                    return;
+
+                client.recordReceived(frame.remaining());
+
+                int ack = client.history != null ? CommandDecoder.parseAck(frame) : -1;
+
+                if (ack >= 0) {
+                    client.history.acknowledge(ack);
+                } else {
+                    CommandDecoder.decode(frame, client);
+                }
+            }
+
+            @Override
+            public void onDisconnected(NioConnection connection) {
+                PongServer.this.onDisconnected(connection);
+            }
+        };
+
+        try {
+            nioServer = new NioServer(NioServer.IO_THREADS);
+            nioServer.start();
+            nioServer.listen(TEXT_PORT, TEXT_FRAMING, handler);
+            nioServer.listen(BINARY_PORT, Framing.LENGTH_PREFIXED, handler);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start server", e);
+        }
+    }
+
+    private void startFXGL(NetService netService) {
+        // creates a writer and reader for the server to use when communicating with clients.
+        Writers.INSTANCE.addTCPWriter(Frame.class, outputStream -> new MessageWriterS(outputStream));
+        Readers.INSTANCE.addTCPReader(Frame.class, in -> new MessageReaderS(in));
+        Writers.INSTANCE.addTCPWriter(byte[].class, outputStream -> new MessageWriterB(outputStream));
+        Readers.INSTANCE.addTCPReader(byte[].class, in -> new MessageReaderB(in));
+
+        // initializes the servers, one per wire format.
+        server = netService.newTCPServer(TEXT_PORT, new ServerConfig<>(Frame.class));
+        binaryServer = netService.newTCPServer(BINARY_PORT, new ServerConfig<>(byte[].class));
+
+        // Detects when a client connects to the server.
+        server.setOnConnected(connection -> {
+            var client = new TextClient(connection);
+
+            connection.addMessageHandler((conn, message) -> {
+                client.recordReceived(message.size());
+                CommandDecoder.decode(message.asReadOnlyBuffer(), client);
+            });
+            onConnected(connection, client);
+        });
+
+        binaryServer.setOnConnected(connection -> {
+            var client = new BinaryClient(connection);
+
+            connection.addMessageHandler((conn, frame) -> {
+                client.recordReceived(frame.length);
+
+                var message = ByteBuffer.wrap(frame);
+                int ack = CommandDecoder.parseAck(message);
+
+                if (ack >= 0) {
+                    client.history.acknowledge(ack);
+                } else {
+                    CommandDecoder.decode(message, client);
+                }
+            });
+            onConnected(connection, client);
+        });
+
+        server.setOnDisconnected(this::onDisconnected);
+        binaryServer.setOnDisconnected(this::onDisconnected);
+
+        startServer(server);
+        startServer(binaryServer);
+    }
+
+    public void stop() {
+        if (udp != null) {
+            udp.stop();
+        }
+
+        if (nioServer != null) {
+            nioServer.stop();
+        } else {
+            server.stop();
+            binaryServer.stop();
+        }
+    }
+
+    private void startServer(Server<?> server) {
+        var t = new Thread(server.startTask()::run);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void onConnected(Object connection, Client client) {
+        clients.put(connection, client);
+        CONNECTIONS_OPENED.increment();
+
+        if (udp != null) {
+            client.send(udp.register(client));
+        }
+
+        client.bindLobby(lobby);
+
+        if (MATCH_DELAY_MS > 0) {
+            MATCHMAKER.schedule(client::match, MATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+        } else {
+            client.match();
+        }
+    }
+
+    private void onDisconnected(Object connection) {
+        var client = clients.remove(connection);
+
+        if (client != null) {
+            CONNECTIONS_CLOSED.increment();
+
+            if (udp != null) {
+                udp.unregister(client);
+            }
+
+            client.leaveLobby();
+        }
+    }
+
+    public int getNumConnections() {
+        return clients.size();
+    }
+
+    /**
+     * Queues the frames shared by all text clients, so that nothing is encoded per client.
+     */
+    private static class TextClient extends Client {
+
+        private final Outbox<Frame> outbox;
+
+        TextClient(Connection<Frame> connection) {
+            outbox = new Outbox<>(WRITERS, batch -> {
+                // without a delimiter the client relies on each message arriving on its own
+                if (TEXT_FRAMING != Framing.LINE || batch.size() == 1) {
+                    batch.forEach(connection::send);
+                } else {
+                    connection.send(Frame.batch(batch));
+                }
+
+                int bytes = 0;
+
+                for (Frame message : batch) {
+                    bytes += message.size();
+                }
+
+                recordSent(batch.size(), bytes);
+            }, connection::terminate);
+        }
+
+        @Override
+        void send(EncodedEvent event) {
+            outbox.event(event.getTextFrame());
+        }
+
+        @Override
+        void sendSnapshot(EncodedSnapshot snapshot) {
+            outbox.snapshot(snapshot.getTextFrame());
+        }
+
+        @Override
+        public Outbox<?> getOutbox() {
+            return outbox;
+        }
+    }
+
+    /**
+     * Writes through the event loop of its connection, and only while the socket keeps up.
+     */
+    private static class NioClient extends Client {
+
+        private final Outbox<byte[]> outbox;
+
+        // only binary clients get deltas
+        private final SnapshotHistory history;
+
+        NioClient(NioConnection connection) {
+            this.history = connection.getFraming() == Framing.LENGTH_PREFIXED ? new SnapshotHistory() : null;
+
+            outbox = new Outbox<>(connection::execute, new Outbox.Sink<>() {
+                @Override
+                public boolean isReady() {
+                    return !connection.isBackedUp();
+                }
+
+                // the batch is queued on the loop thread, so it is flushed with a single write after this task,
+                // or with a write per message if text is not framed
+                @Override
+                public void write(List<byte[]> batch) {
+                    int bytes = 0;
+
+                    for (byte[] message : batch) {
+                        connection.send(message);
+                        bytes += message.length;
+                    }
+
+                    recordSent(batch.size(), bytes);
+                }
+            }, connection::terminate);
+            connection.setOnDrained(outbox::flush);
+        }
+
+        @Override
+        void send(EncodedEvent event) {
+            outbox.event(history != null ? event.getBinary() : event.getTextBytes());
+        }
+
+        @Override
+        public double getViewDelay() {
+            return history != null && history.getAckedSequence() >= 0
+                    ? history.getUnacknowledged() * TickScheduler.SNAPSHOT_INTERVAL
+                    : super.getViewDelay();
+        }
+
+        @Override
+        void sendSnapshot(EncodedSnapshot snapshot) {
+            outbox.snapshot(history != null ? history.encode(snapshot) : snapshot.getTextBytes());
+        }
+
+        @Override
+        public Outbox<?> getOutbox() {
+            return outbox;
+        }
+    }
+
+    /**
+     * Binary clients get a delta against the last snapshot they acknowledged, if any.
+     */
+    private static class BinaryClient extends Client {
+
+        private final Outbox<byte[]> outbox;
+        private final SnapshotHistory history = new SnapshotHistory();
+
+        BinaryClient(Connection<byte[]> connection) {
+            outbox = new Outbox<>(WRITERS, batch -> {
+                byte[] frames = MessageWriterB.frame(batch);
+                connection.send(frames);
+                recordSent(batch.size(), frames.length);
+            }, connection::terminate);
+        }
+
+        @Override
+        void send(EncodedEvent event) {
+            outbox.event(event.getBinary());
+        }
+
+        @Override
+        public double getViewDelay() {
+            return history.getAckedSequence() >= 0
+                    ? history.getUnacknowledged() * TickScheduler.SNAPSHOT_INTERVAL
+                    : super.getViewDelay();
+        }
+
+        @Override
+        void sendSnapshot(EncodedSnapshot snapshot) {
+            outbox.snapshot(history.encode(snapshot));
+        }
+
+        @Override
+        public Outbox<?> getOutbox() {
+            return outbox;
+        }
+    }
+
+    /**
+     * Writes frames that are already encoded, buffered so that a batch and its delimiters go out with one write.
+     */
+    static class MessageWriterS implements TCPMessageWriter<Frame> {
+
+        private OutputStream out;
+
+        MessageWriterS(OutputStream os) {
+            out = new BufferedOutputStream(os);
+        }
+
+        @Override
+        public void write(Frame frame) throws Exception {
+            frame.writeTo(out, TEXT_FRAMING == Framing.LINE);
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes batches of binary frames built by {@link #frame(List)}, so that all frames of a tick go out with one write.
+     */
+    static class MessageWriterB implements TCPMessageWriter<byte[]> {
+
+        private OutputStream out;
+
+        MessageWriterB(OutputStream os) {
+            out = os;
+        }
+
+        /**
+         * @return the frames, each prefixed by its length as an unsigned short
+         */
+        static byte[] frame(List<byte[]> frames) {
+            int size = 0;
+
+            for (byte[] frame : frames) {
+                size += 2 + frame.length;
+            }
+
+            ByteBuffer batch = ByteBuffer.allocate(size);
+
+            for (byte[] frame : frames) {
+                batch.putShort((short) frame.length).put(frame);
+            }
+
+            return batch.array();
+        }
+
+        @Override
+        public void write(byte[] batch) throws Exception {
+            out.write(batch);
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads frames written in the same format as {@link MessageWriterB}.
+     * Unlike {@link MessageReaderS}, a frame is only returned once it has been read in full.
+     */
+    static class MessageReaderB implements TCPMessageReader<byte[]> {
+
+        private DataInputStream in;
+
+        MessageReaderB(InputStream is) {
+            in = new DataInputStream(new BufferedInputStream(is));
+        }
+
+        @Override
+        public byte[] read() throws Exception {
+            // throws EOFException once the client has disconnected
+            int length = in.readUnsignedShort();
+
+            if (length > FrameDecoder.MAX_FRAME_SIZE)
+                throw new ProtocolException("Frame of " + length + " bytes is larger than " + FrameDecoder.MAX_FRAME_SIZE);
+
+            byte[] frame = new byte[length];
+            in.readFully(frame);
+            return frame;
+        }
+    }
+
+    /**
+     * Reads text messages delimited according to {@link #TEXT_FRAMING}.
+     * Messages are decoded on the reading thread of the FXGL connection, which blocks in {@link #read()}.
+     */
+    static class MessageReaderS implements TCPMessageReader<Frame> {
+
+        private final InputStream in;
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(FrameDecoder.BUFFER_SIZE);
+        private final FrameDecoder decoder = new FrameDecoder(buffer, TEXT_FRAMING);
+
+        private final Queue<Frame> messages = new ArrayDeque<>();
+        private final FrameDecoder.FrameHandler onFrame = frame -> {
+            byte[] message = new byte[frame.remaining()];
+            frame.get(message);
+
+            if (Log.isEnabled(Log.Level.DEBUG)) {
+                System.out.println("Recv message: " + new String(message, StandardCharsets.US_ASCII));
+            }
+
+            messages.add(Frame.wrap(message));
+        };
+
+        MessageReaderS(InputStream is) {
+            in = is;
+        }
+
+        @Override
+        public Frame read() throws Exception {
+            while (messages.isEmpty()) {
+                int len = in.read(buffer.array(), buffer.position(), buffer.remaining());
+
+                // Once the stream has ended, the connection has been terminated.
+                if (len < 0)
+                    throw new EOFException();
+
+                buffer.position(buffer.position() + len);
+                decoder.decode(onFrame);
+            }
+
+            return messages.poll();
+        }
+    }
+}
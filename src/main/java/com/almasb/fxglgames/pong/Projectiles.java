@@ -0,0 +1,109 @@
+package com.almasb.fxglgames.pong;
+
+/**
+ * The projectiles in flight in one match, kept as parallel primitive arrays (one entry per projectile)
+ * so that moving hundreds of them touches a few contiguous arrays rather than hundreds of objects.
+ *
+ * Removing a projectile moves the last one into its slot, so indices are only stable until the next removal.
+ * Iterate from the end when removing during iteration.
+ */
+public class Projectiles {
+
+    private final int capacity;
+    private final int[] perOwner = new int[2];
+
+    int count = 0;
+
+    final byte[] owner;
+    final double[] x;
+    final double[] y;
+    final double[] vx;
+    final double[] vy;
+
+    public Projectiles(int capacity) {
+        this.capacity = capacity;
+
+        owner = new byte[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+    }
+
+    /**
+     * @return index of the new projectile, or -1 if the store is full
+     */
+    public int add(int player, double x, double y, double vx, double vy) {
+        if (count == capacity)
+            return -1;
+
+        int i = count++;
+        owner[i] = (byte) player;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.vx[i] = vx;
+        this.vy[i] = vy;
+
+        perOwner[player]++;
+        return i;
+    }
+
+    public void remove(int i) {
+        perOwner[owner[i]]--;
+
+        int last = --count;
+
+        if (i != last) {
+            owner[i] = owner[last];
+            x[i] = x[last];
+            y[i] = y[last];
+            vx[i] = vx[last];
+            vy[i] = vy[last];
+        }
+    }
+
+    public void clear() {
+        count = 0;
+        perOwner[0] = 0;
+        perOwner[1] = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of projectiles fired by the given player that are still in flight
+     */
+    public int count(int player) {
+        return perOwner[player];
+    }
+
+    /**
+     * @return index of the player's first projectile in storage order, or -1 if it has none
+     */
+    public int first(int player) {
+        for (int i = 0; i < count; i++) {
+            if (owner[i] == player)
+                return i;
+        }
+
+        return -1;
+    }
+
+    public int getOwner(int i) {
+        return owner[i];
+    }
+
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+}
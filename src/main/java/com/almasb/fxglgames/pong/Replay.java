@@ -0,0 +1,264 @@
+package com.almasb.fxglgames.pong;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Plays a {@link Journal} back through the {@link Match} rules as fast as possible
+ * and checks that the same events happen and that the state matches every recorded keyframe.
+ *
+ * The journal starts with a header and is followed by records until an END byte or the end of the file:
+ *
+ * <pre>
+ * s32 magic, u8 version, f64 tick duration, u16 bullets per tank, u16 maximum rewind in ticks
+ * u8 INPUT,    s64 tick, u8 player, u8 action (LEFT, RIGHT, STOP, FIRE)
+ * u8 REWIND,   s64 tick, u8 player, u16 ticks (see {@link Match#setRewind(int, int)})
+ * u8 EVENT,    s64 tick, u8 length, ASCII event name
+ * u8 KEYFRAME, s64 tick, s32 size, match state (see {@link Match#save(ByteBuffer)})
+ * </pre>
+ *
+ * Inputs and rewinds of a tick are applied before it is run, events happen while it runs and keyframes
+ * are taken after it has run. The first record is a keyframe, which the replay starts from.
+ * Events can also happen while inputs are applied, e.g. when a player fires, so the records of a tick
+ * may interleave events and inputs. Recorded events are therefore only compared once their tick has run.
+ *
+ * Usage: java com.almasb.fxglgames.pong.Replay file.journal...
+ */
+public class Replay {
+
+    public static final class Result {
+
+        private long ticks;
+        private long inputs;
+        private long events;
+        private int keyframes;
+        private int mismatches;
+        private String firstMismatch;
+        private double replayTime;
+        private double matchTime;
+
+        public long getTicks() {
+            return ticks;
+        }
+
+        public int getKeyframes() {
+            return keyframes;
+        }
+
+        public int getMismatches() {
+            return mismatches;
+        }
+
+        /**
+         * @return description of the first difference between the replay and the journal, or null if there was none
+         */
+        public String getFirstMismatch() {
+            return firstMismatch;
+        }
+
+        private void mismatch(String description) {
+            if (mismatches++ == 0) {
+                firstMismatch = description;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d ticks (%.1f s of play in %.3f s), %d inputs, %d events, %d keyframes, %d mismatches%s",
+                    ticks, matchTime, replayTime, inputs, events, keyframes, mismatches,
+                    firstMismatch == null ? "" : ", first: " + firstMismatch);
+        }
+    }
+
+    private static final class Event {
+
+        final long tick;
+        final String name;
+
+        Event(long tick, String name) {
+            this.tick = tick;
+            this.name = name;
+        }
+    }
+
+    private final ByteBuffer in;
+    private final Result result = new Result();
+
+    private final Queue<String> emitted = new ArrayDeque<>();
+
+    // read from the journal, but their tick has not run yet
+    private final ArrayDeque<Event> recorded = new ArrayDeque<>();
+
+    // created once the header has been read
+    private Match match;
+    private ByteBuffer state;
+
+    private double tickDuration;
+    private long stepped = 0;
+
+    private Replay(ByteBuffer in) {
+        this.in = in;
+    }
+
+    public static Result run(Path file) throws IOException {
+        try (var channel = FileChannel.open(file)) {
+            return new Replay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())).run();
+        }
+    }
+
+    private Result run() throws IOException {
+        long start = System.nanoTime();
+
+        if (in.remaining() < 17 || in.getInt() != Journal.MAGIC || in.get() != Journal.VERSION)
+            throw new IOException("Not a version " + Journal.VERSION + " journal");
+
+        tickDuration = in.getDouble();
+
+        int bulletsPerTank = in.getShort() & 0xFFFF;
+        int maxRewindTicks = in.getShort() & 0xFFFF;
+        match = new Match(emitted::add, bulletsPerTank, maxRewindTicks);
+        state = ByteBuffer.allocate(Match.getMaxStateSize(bulletsPerTank));
+
+        if (in.remaining() == 0 || in.get(in.position()) != Journal.KEYFRAME)
+            throw new IOException("Journal does not start with a keyframe");
+
+        boolean started = false;
+
+        while (in.hasRemaining()) {
+            byte type = in.get();
+
+            if (type == Journal.END)
+                break;
+
+            long tick = in.getLong();
+
+            switch (type) {
+                case Journal.INPUT:
+                    stepTo(tick);
+                    applyInput(in.get(), in.get());
+                    result.inputs++;
+                    break;
+
+                case Journal.REWIND:
+                    stepTo(tick);
+                    match.setRewind(in.get(), in.getShort() & 0xFFFF);
+                    break;
+
+                case Journal.EVENT:
+                    recorded.add(new Event(tick, Journal.readEvent(in)));
+                    result.events++;
+                    break;
+
+                case Journal.KEYFRAME:
+                    if (!started) {
+                        in.getInt();
+                        match.load(in);
+                        stepped = tick + 1;
+                        started = true;
+                    } else {
+                        stepTo(tick + 1);
+                        checkKeyframe(tick);
+                    }
+                    break;
+
+                default:
+                    throw new IOException("Unknown record type " + type + " at " + (in.position() - 9));
+            }
+        }
+
+        if (!recorded.isEmpty()) {
+            stepTo(recorded.getLast().tick + 1);
+        }
+
+        for (String event : emitted) {
+            result.mismatch("event " + event + " was not recorded");
+        }
+
+        result.replayTime = (System.nanoTime() - start) / 1_000_000_000.0;
+        result.matchTime = result.ticks * tickDuration;
+        return result;
+    }
+
+    private void stepTo(long tick) {
+        while (stepped < tick) {
+            match.step(tickDuration);
+            stepped++;
+            result.ticks++;
+
+            checkEvents();
+        }
+    }
+
+    private void applyInput(int player, byte action) throws IOException {
+        switch (action) {
+            case Journal.LEFT:
+                match.left(player);
+                break;
+            case Journal.RIGHT:
+                match.right(player);
+                break;
+            case Journal.STOP:
+                match.stop(player);
+                break;
+            case Journal.FIRE:
+                match.fire(player);
+                break;
+            default:
+                throw new IOException("Unknown input action " + action);
+        }
+    }
+
+    // compares the recorded events of the ticks that have run with the events the replay has emitted
+    private void checkEvents() {
+        while (!recorded.isEmpty() && recorded.peek().tick < stepped) {
+            Event expected = recorded.poll();
+            String actual = emitted.poll();
+
+            if (!expected.name.equals(actual)) {
+                result.mismatch("tick " + expected.tick + ": expected event " + expected.name + " but got " + actual);
+            }
+        }
+    }
+
+    private void checkKeyframe(long tick) {
+        result.keyframes++;
+
+        state.clear();
+        match.save(state);
+        state.flip();
+
+        int size = in.getInt();
+
+        ByteBuffer expected = in.slice();
+        expected.limit(size);
+        in.position(in.position() + size);
+
+        if (!expected.equals(state)) {
+            result.mismatch("tick " + tick + ": state differs from keyframe");
+
+            // continue from the recorded state, so that one difference is not reported at every later keyframe
+            expected.rewind();
+            match.load(expected);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean ok = true;
+
+        for (String arg : args) {
+            Result result = run(Paths.get(arg));
+
+            System.out.println(arg + ": " + result);
+            ok &= result.getMismatches() == 0;
+        }
+
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.almasb.fxglgames.pong;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One match of the {@link HeadlessServer} with its own game state, player slots and scores.
+ *
+ * Rooms are ticked by a shared pool of worker threads. A room never runs on two threads at once.
+ * Client input is read from the group's {@link InputBuffer} at the start of each tick and other
+ * callbacks are queued in a mailbox that is drained at the start of each update,
+ * so the match state is only ever touched by the thread currently running the room.
+ * With -Dpong.recordDir set, each room records its match to a {@link Journal}.
+ */
+public class Room implements PongServer.Listener {
+
+    private final int id;
+
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final ClientGroup clients = new ClientGroup(this, mailbox::add, false);
+
+    private final Match match = new Match(this::onEvent);
+    private final Snapshot snapshot = new Snapshot();
+
+    private final TickScheduler scheduler = new TickScheduler(
+            TickScheduler.TICK_RATE, TickScheduler.SNAPSHOT_RATE, TickScheduler.MAX_CATCH_UP_TICKS,
+            this::tick, this::sendSnapshot);
+
+    // null unless matches are recorded, see Journal.RECORD_DIR
+    private final Journal journal;
+    private final InputBuffer.Target input;
+
+    private ScheduledFuture<?> task;
+    private boolean stopped = false;
+
+    public Room(int id) {
+        this.id = id;
+
+        journal = Journal.RECORD_DIR != null ? openJournal() : null;
+        input = journal != null ? journal.record(match, scheduler::getTick) : match;
+    }
+
+    private Journal openJournal() {
+        var file = Paths.get(Journal.RECORD_DIR, "room-" + id + "-" + System.currentTimeMillis() + ".journal");
+
+        try {
+            var journal = new Journal(file, scheduler.getTickDuration(), match.getBulletsPerTank(), match.getMaxRewindTicks());
+            journal.keyframe(-1, match);
+            return journal;
+        } catch (IOException e) {
+            System.out.println("Warning: Could not record room " + id + " to " + file + ": " + e);
+            return null;
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public ClientGroup getClients() {
+        return clients;
+    }
+
+    void start(ScheduledExecutorService workers) {
+        long period = (long) (scheduler.getTickDuration() * 1_000_000_000L);
+
+        task = workers.scheduleAtFixedRate(this::update, 0, period, TimeUnit.NANOSECONDS);
+    }
+
+    // synchronized with update, so that the journal is not closed in the middle of a tick
+    synchronized void stop() {
+        stopped = true;
+
+        if (task != null) {
+            task.cancel(false);
+        }
+
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("Warning: Could not close journal of room " + id + ": " + e);
+            }
+        }
+    }
+
+    private synchronized void update() {
+        if (stopped)
+            return;
+
+        try {
+            Runnable action;
+            while ((action = mailbox.poll()) != null) {
+                action.run();
+            }
+
+            scheduler.update();
+            clients.flush();
+        } catch (Exception e) {
+            // an exception would otherwise cancel all future ticks of this room silently
+            System.out.println("Warning: Tick of room " + id + " failed: " + e);
+        }
+    }
+
+    private void tick(double dt) {
+        long tick = scheduler.getTick();
+
+        clients.getInput().apply(input);
+        updateRewind(tick, dt);
+        match.step(dt);
+
+        if (journal != null && (tick + 1) % Journal.KEYFRAME_INTERVAL == 0) {
+            journal.keyframe(tick, match);
+        }
+    }
+
+    // hits are judged against what each player saw, a change is recorded like an input so that replays judge the same
+    private void updateRewind(long tick, double dt) {
+        for (int player = 0; player < 2; player++) {
+            int previous = match.getRewind(player);
+            match.setRewind(player, (int) Math.round(clients.getViewDelay(player) / dt));
+
+            if (journal != null && match.getRewind(player) != previous) {
+                journal.rewind(tick, player, match.getRewind(player));
+            }
+        }
+    }
+
+    private void onEvent(String event) {
+        if (journal != null) {
+            journal.event(scheduler.getTick(), event);
+        }
+
+        clients.broadcast(event);
+    }
+
+    private void sendSnapshot() {
+        if (!clients.isEmpty()) {
+            snapshot.setSequence(snapshot.getSequence() + 1);
+            match.capture(snapshot);
+            clients.getInput().capture(snapshot);
+            clients.sendSnapshot(snapshot);
+        }
+    }
+
+    @Override
+    public void onPlayerConnected(int player) {
+        System.out.println("Room " + id + ": Player " + (player + 1) + " connected.");
+    }
+
+    @Override
+    public void onPlayerResumed(int player) {
+        System.out.println("Room " + id + ": Player " + (player + 1) + " reconnected.");
+    }
+}
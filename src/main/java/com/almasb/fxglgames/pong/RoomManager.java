@@ -0,0 +1,133 @@
+package com.almasb.fxglgames.pong;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Matches connecting clients into {@link Room}s, so that a single server hosts many independent matches.
+ * A new client joins a room where a player is waiting for an opponent, or else opens a new room.
+ * Rooms are closed once their last client has left and no slot is held for a player to resume.
+ */
+public class RoomManager implements Lobby {
+
+    /**
+     * Number of worker threads that tick the rooms, can be overridden with the pong.tickThreads system property.
+     */
+    public static final int TICK_THREADS = Integer.getInteger("pong.tickThreads", Runtime.getRuntime().availableProcessors());
+
+    private final ScheduledExecutorService workers;
+
+    private final List<Room> rooms = new ArrayList<>();
+    private final Map<Client, Room> roomsByClient = new HashMap<>();
+
+    private int nextRoomId = 1;
+
+    public RoomManager(int numThreads) {
+        var threadNum = new AtomicInteger();
+
+        workers = Executors.newScheduledThreadPool(numThreads, r -> new Thread(r, "room-tick-" + threadNum.incrementAndGet()));
+
+        Metrics.gauge("pong_rooms", "Rooms currently open", this::getNumRooms);
+    }
+
+    @Override
+    public synchronized void onConnected(Client client) {
+        Room room = findWaitingRoom();
+
+        if (room == null) {
+            room = new Room(nextRoomId++);
+            rooms.add(room);
+            room.start(workers);
+        }
+
+        room.getClients().join(client);
+        roomsByClient.put(client, room);
+    }
+
+    @Override
+    public synchronized void onDisconnected(Client client) {
+        Room room = roomsByClient.remove(client);
+
+        if (room == null)
+            return;
+
+        room.getClients().leave(client);
+        closeIfAbandoned(room);
+    }
+
+    /**
+     * Moves the client to the room that holds the slot for the token, leaving the room it was put in, if it was matched already.
+     */
+    @Override
+    public synchronized void onResume(Client client, long token) {
+        for (Room room : rooms) {
+            if (!room.getClients().canResume(token))
+                continue;
+
+            Room current = roomsByClient.get(client);
+
+            if (current != null && current != room) {
+                current.getClients().release(client);
+                closeIfAbandoned(current);
+            }
+
+            if (room.getClients().resume(client, token)) {
+                roomsByClient.put(client, room);
+            } else if (current != room) {
+                // the slot stopped being held in the meantime
+                onConnected(client);
+            }
+
+            return;
+        }
+    }
+
+    // a room whose players may still resume is checked again once their slots are no longer held
+    private synchronized void closeIfAbandoned(Room room) {
+        if (!rooms.contains(room) || !room.getClients().isEmpty())
+            return;
+
+        if (room.getClients().hasHeldSlots()) {
+            workers.schedule(() -> closeIfAbandoned(room), ClientGroup.RESUME_GRACE_MS, TimeUnit.MILLISECONDS);
+        } else {
+            room.stop();
+            rooms.remove(room);
+        }
+    }
+
+    // a room with one player waiting is preferred over an empty one, rooms with a held slot are left to the player who held it
+    private Room findWaitingRoom() {
+        Room empty = null;
+
+        for (Room room : rooms) {
+            var clients = room.getClients();
+
+            if (!clients.hasFreeSlot())
+                continue;
+
+            int numPlayers = clients.getNumPlayers();
+
+            if (numPlayers == 1)
+                return room;
+
+            if (numPlayers == 0 && empty == null && !clients.hasHeldSlots())
+                empty = room;
+        }
+
+        return empty;
+    }
+
+    public synchronized int getNumRooms() {
+        return rooms.size();
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
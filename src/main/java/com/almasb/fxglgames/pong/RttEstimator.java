@@ -0,0 +1,123 @@
+package com.almasb.fxglgames.pong;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Round trip time, jitter and clock offset of a single connection, measured by "PING,serverTime" messages
+ * that the client answers with "PONG,serverTime,clientTime". Times are in microseconds, server times on
+ * the clock of {@link #now()}, client times on whatever clock the client uses.
+ *
+ * Samples are smoothed like TCP's retransmission timer (RFC 6298): the round trip time and the clock offset
+ * move an eighth of the way towards each sample, the jitter is the smoothed deviation of the samples
+ * from the round trip time. Samples are added on the connection's reading thread and can be read from any thread.
+ *
+ * Only the answer to the latest ping counts, and only once, so a client cannot make up round trip times
+ * by echoing times of its own or replaying old pings.
+ */
+public class RttEstimator {
+
+    /**
+     * Time between pings to each client, can be overridden with the pong.pingIntervalMs system property (0 turns pings off).
+     */
+    public static final int PING_INTERVAL_MS = Integer.getInteger("pong.pingIntervalMs", 1000);
+
+    // answers later than this are taken to be bogus rather than slow
+    private static final long MAX_RTT = 10_000_000;
+
+    private static final long ORIGIN = System.nanoTime();
+
+    private static final Metrics.Histogram RTT = Metrics.histogram("pong_rtt_seconds", "Round trip times measured by pings");
+
+    // only touched by the thread that flushes the client, -1 until the first ping
+    private long lastPing = -1;
+
+    // time of the ping still waiting for an answer, -1 if none, taken by the reading thread when the answer arrives
+    private final AtomicLong outstanding = new AtomicLong(-1);
+
+    private volatile int samples = 0;
+    private volatile long rtt = 0;
+    private volatile long jitter = 0;
+    private volatile long clockOffset = 0;
+
+    /**
+     * @return microseconds since the server started, the clock that pings are stamped with
+     */
+    public static long now() {
+        return (System.nanoTime() - ORIGIN) / 1000;
+    }
+
+    /**
+     * @return the ping message to send if the last one was sent at least {@link #PING_INTERVAL_MS} ago, otherwise null
+     */
+    String nextPing(long now) {
+        if (PING_INTERVAL_MS <= 0 || (lastPing >= 0 && now - lastPing < PING_INTERVAL_MS * 1000L))
+            return null;
+
+        lastPing = now;
+        outstanding.set(now);
+        return NetworkMessages.PING + "," + now;
+    }
+
+    /**
+     * Adds the sample of an answered ping.
+     *
+     * @param serverTime the time the ping was stamped with, echoed by the client
+     * @param clientTime the client's clock when it answered
+     * @param now the time the answer arrived
+     * @return false if the answer does not match the latest ping, or came too late, and was ignored
+     */
+    public boolean onPong(long serverTime, long clientTime, long now) {
+        if (serverTime < 0 || !outstanding.compareAndSet(serverTime, -1))
+            return false;
+
+        long sample = now - serverTime;
+
+        if (sample < 0 || sample > MAX_RTT)
+            return false;
+
+        // the client answered about half way through the round trip
+        long offset = clientTime - (serverTime + sample / 2);
+
+        if (samples == 0) {
+            rtt = sample;
+            jitter = sample / 2;
+            clockOffset = offset;
+        } else {
+            jitter += (Math.abs(rtt - sample) - jitter) / 4;
+            rtt += (sample - rtt) / 8;
+            clockOffset += (offset - clockOffset) / 8;
+        }
+
+        samples++;
+        RTT.recordNanos(sample * 1000);
+        return true;
+    }
+
+    /**
+     * @return number of answered pings
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return smoothed round trip time in microseconds, 0 until a ping has been answered
+     */
+    public long getRtt() {
+        return rtt;
+    }
+
+    /**
+     * @return smoothed deviation of the round trip time in microseconds
+     */
+    public long getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @return microseconds to add to a server time to get the client's clock at that moment
+     */
+    public long getClockOffset() {
+        return clockOffset;
+    }
+}
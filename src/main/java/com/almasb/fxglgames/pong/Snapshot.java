@@ -0,0 +1,176 @@
+package com.almasb.fxglgames.pong;
+
+import java.util.Arrays;
+
+/**
+ * State of a match at a single server tick, as sent to the clients.
+ * Instances are mutable so that the server can refill the same
+ * snapshot every tick instead of allocating a new one.
+ *
+ * Besides one ball per player, a snapshot can carry a list of every projectile in flight,
+ * for matches with more than one ball per tank (see {@link Match#BULLETS_PER_TANK}).
+ * The list arrays only grow, so a refilled snapshot stops allocating once it has seen the largest list.
+ *
+ * A snapshot also acknowledges, per player, the sequence number of the latest input message the server
+ * had applied when it was taken, so that a client predicting its own bat knows which inputs to replay.
+ */
+public class Snapshot {
+
+    public static final int PLAYER1 = 0;
+    public static final int PLAYER2 = 1;
+
+    int sequence;
+
+    final double[] batX = new double[2];
+    final int[] score = new int[2];
+
+    final boolean[] ball = new boolean[2];
+    final double[] ballX = new double[2];
+    final double[] ballY = new double[2];
+
+    boolean hasProjectiles = false;
+    int projectiles = 0;
+    byte[] projectileOwner = new byte[0];
+    double[] projectileX = new double[0];
+    double[] projectileY = new double[0];
+
+    final int[] inputSequence = { -1, -1 };
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    public void setBatX(int player, double x) {
+        batX[player] = x;
+    }
+
+    public void setScore(int player, int value) {
+        score[player] = value;
+    }
+
+    public double getBatX(int player) {
+        return batX[player];
+    }
+
+    public int getScore(int player) {
+        return score[player];
+    }
+
+    public boolean hasBall(int player) {
+        return ball[player];
+    }
+
+    public double getBallX(int player) {
+        return ballX[player];
+    }
+
+    public double getBallY(int player) {
+        return ballY[player];
+    }
+
+    public void setBall(int player, double x, double y) {
+        ball[player] = true;
+        ballX[player] = x;
+        ballY[player] = y;
+    }
+
+    public void clearBall(int player) {
+        ball[player] = false;
+        ballX[player] = 0;
+        ballY[player] = 0;
+    }
+
+    /**
+     * @return true if the snapshot carries a projectile list, which may be empty
+     */
+    public boolean hasProjectiles() {
+        return hasProjectiles;
+    }
+
+    public int getProjectileCount() {
+        return projectiles;
+    }
+
+    public int getProjectileOwner(int i) {
+        return projectileOwner[i];
+    }
+
+    public double getProjectileX(int i) {
+        return projectileX[i];
+    }
+
+    public double getProjectileY(int i) {
+        return projectileY[i];
+    }
+
+    /**
+     * Empties the projectile list.
+     *
+     * @param hasProjectiles whether the snapshot carries a list at all
+     */
+    public void clearProjectiles(boolean hasProjectiles) {
+        this.hasProjectiles = hasProjectiles;
+        projectiles = 0;
+    }
+
+    public void addProjectile(int owner, double x, double y) {
+        ensureProjectileCapacity(projectiles + 1);
+
+        projectileOwner[projectiles] = (byte) owner;
+        projectileX[projectiles] = x;
+        projectileY[projectiles] = y;
+        projectiles++;
+    }
+
+    private void ensureProjectileCapacity(int capacity) {
+        if (capacity > projectileX.length) {
+            int size = Math.max(capacity, 2 * projectileX.length);
+
+            projectileOwner = Arrays.copyOf(projectileOwner, size);
+            projectileX = Arrays.copyOf(projectileX, size);
+            projectileY = Arrays.copyOf(projectileY, size);
+        }
+    }
+
+    /**
+     * @return true if either player has sent numbered input
+     */
+    public boolean hasInputSequences() {
+        return inputSequence[0] >= 0 || inputSequence[1] >= 0;
+    }
+
+    /**
+     * @return sequence number of the latest input message from the player that was applied, or -1 if none
+     */
+    public int getInputSequence(int player) {
+        return inputSequence[player];
+    }
+
+    public void setInputSequence(int player, int sequence) {
+        inputSequence[player] = sequence;
+    }
+
+    public void copyFrom(Snapshot other) {
+        sequence = other.sequence;
+
+        for (int i = 0; i < 2; i++) {
+            batX[i] = other.batX[i];
+            score[i] = other.score[i];
+            ball[i] = other.ball[i];
+            ballX[i] = other.ballX[i];
+            ballY[i] = other.ballY[i];
+            inputSequence[i] = other.inputSequence[i];
+        }
+
+        hasProjectiles = other.hasProjectiles;
+        projectiles = other.projectiles;
+        ensureProjectileCapacity(projectiles);
+        System.arraycopy(other.projectileOwner, 0, projectileOwner, 0, projectiles);
+        System.arraycopy(other.projectileX, 0, projectileX, 0, projectiles);
+        System.arraycopy(other.projectileY, 0, projectileY, 0, projectiles);
+    }
+}
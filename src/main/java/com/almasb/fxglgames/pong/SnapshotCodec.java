@@ -0,0 +1,482 @@
+package com.almasb.fxglgames.pong;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes snapshots and events for the two wire formats the server speaks.
+ *
+ * The text format is the original comma separated GAME_DATA message.
+ * The binary format (version 1) is a fixed-width header followed by quantized positions:
+ *
+ * <pre>
+ * u8  version
+ * u8  frame type (SNAPSHOT)
+ * s32 sequence
+ * u8  ball presence mask (bit 0 = player 1 ball, bit 1 = player 2 ball)
+ * u8  flags (bit 0 = projectile list follows, bit 1 = input sequence numbers follow, was reserved and 0 in earlier servers)
+ * s16 bat 1 x, s16 bat 2 x
+ * u16 score 1, u16 score 2
+ * s16 ball x, s16 ball y     (once per bit set in the presence mask)
+ * u16 projectile count       (if the projectile list flag is set)
+ * u8 owner, s16 x, s16 y     (once per projectile, owner 0 = player 1, 1 = player 2)
+ * s32 input 1, s32 input 2   (if the input sequence flag is set, -1 = no numbered input from that player)
+ * </pre>
+ *
+ * Positions are fixed point with {@link #POSITION_SCALE} steps per pixel.
+ * Optional parts come last, so clients that do not know them can ignore the rest of the frame.
+ *
+ * A delta frame describes a snapshot relative to an earlier one the client has acknowledged:
+ *
+ * <pre>
+ * u8  version
+ * u8  frame type (DELTA)
+ * s32 sequence
+ * s32 baseline sequence
+ * u8  changed field mask (see FIELD_* constants)
+ * u8  ball presence mask
+ * changed fields only, in field order, with the same encoding as above
+ * </pre>
+ *
+ * A changed projectile list is sent whole, as count and entries.
+ * Changed input sequence numbers are sent as a pair.
+ *
+ * Text snapshots end with ",count,owner,x,y,..." for the projectile list and ",INPUT,input 1,input 2"
+ * for the input sequence numbers, each only when the binary frame would have it.
+ *
+ * Event frames are the version and type bytes followed by the ASCII event name.
+ * Every frame is length-prefixed by {@link PongServer.MessageWriterB}.
+ */
+public final class SnapshotCodec {
+
+    public static final int VERSION = 1;
+
+    public static final byte TYPE_SNAPSHOT = 1;
+    public static final byte TYPE_EVENT = 2;
+    public static final byte TYPE_DELTA = 3;
+
+    public static final int FIELD_BAT1_X = 1;
+    public static final int FIELD_BAT2_X = 1 << 1;
+    public static final int FIELD_SCORE1 = 1 << 2;
+    public static final int FIELD_SCORE2 = 1 << 3;
+    public static final int FIELD_BALL1 = 1 << 4;
+    public static final int FIELD_BALL2 = 1 << 5;
+    public static final int FIELD_PROJECTILES = 1 << 6;
+    public static final int FIELD_INPUT_SEQUENCES = 1 << 7;
+
+    public static final int FLAG_PROJECTILES = 1;
+    public static final int FLAG_INPUT_SEQUENCES = 1 << 1;
+
+    public static final int POSITION_SCALE = 4;
+
+    public static final int HEADER_SIZE = 8;
+
+    /**
+     * Size of the largest snapshot without a projectile list or input sequence numbers.
+     */
+    public static final int MAX_SNAPSHOT_SIZE = HEADER_SIZE + 8 + 2 * 4;
+
+    private static final int PROJECTILE_SIZE = 5;
+    private static final int INPUT_SEQUENCES_SIZE = 8;
+
+    private SnapshotCodec() { }
+
+    public static String toText(Snapshot snapshot) {
+        return appendText(new StringBuilder(96), snapshot).toString();
+    }
+
+    public static StringBuilder appendText(StringBuilder sb, Snapshot snapshot) {
+        sb.append("GAME_DATA,")
+                .append(snapshot.batX[0])
+                .append(',')
+                .append(snapshot.batX[1])
+                .append(',')
+                .append(snapshot.score[0])
+                .append(',')
+                .append(snapshot.score[1])
+                .append(',')
+                .append(snapshot.ball[0] ? 1 : 0)
+                .append(',')
+                .append(snapshot.ball[1] ? 1 : 0);
+
+        for (int i = 0; i < 2; i++) {
+            if (snapshot.ball[i]) {
+                sb.append(',')
+                        .append(snapshot.ballX[i])
+                        .append(',')
+                        .append(snapshot.ballY[i]);
+            }
+        }
+
+        if (snapshot.hasProjectiles) {
+            sb.append(',').append(snapshot.projectiles);
+
+            for (int i = 0; i < snapshot.projectiles; i++) {
+                sb.append(',')
+                        .append(snapshot.projectileOwner[i])
+                        .append(',')
+                        .append(snapshot.projectileX[i])
+                        .append(',')
+                        .append(snapshot.projectileY[i]);
+            }
+        }
+
+        if (snapshot.hasInputSequences()) {
+            sb.append(",INPUT,")
+                    .append(snapshot.inputSequence[0])
+                    .append(',')
+                    .append(snapshot.inputSequence[1]);
+        }
+
+        return sb;
+    }
+
+    /**
+     * @return upper bound of the size of the snapshot's binary keyframe
+     */
+    public static int maxEncodedSize(Snapshot snapshot) {
+        int size = MAX_SNAPSHOT_SIZE;
+
+        if (snapshot.hasProjectiles)
+            size += 2 + snapshot.projectiles * PROJECTILE_SIZE;
+
+        if (snapshot.hasInputSequences())
+            size += INPUT_SEQUENCES_SIZE;
+
+        return size;
+    }
+
+    public static byte[] encode(Snapshot snapshot) {
+        ByteBuffer buffer = ByteBuffer.allocate(maxEncodedSize(snapshot));
+        encode(snapshot, buffer);
+
+        if (buffer.position() == buffer.capacity())
+            return buffer.array();
+
+        byte[] bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    public static void encode(Snapshot snapshot, ByteBuffer out) {
+        out.put((byte) VERSION)
+                .put(TYPE_SNAPSHOT)
+                .putInt(snapshot.sequence)
+                .put((byte) presenceMask(snapshot))
+                .put((byte) flags(snapshot))
+                .putShort(quantize(snapshot.batX[0]))
+                .putShort(quantize(snapshot.batX[1]))
+                .putShort((short) snapshot.score[0])
+                .putShort((short) snapshot.score[1]);
+
+        for (int i = 0; i < 2; i++) {
+            if (snapshot.ball[i]) {
+                out.putShort(quantize(snapshot.ballX[i]))
+                        .putShort(quantize(snapshot.ballY[i]));
+            }
+        }
+
+        if (snapshot.hasProjectiles) {
+            encodeProjectiles(snapshot, out);
+        }
+
+        if (snapshot.hasInputSequences()) {
+            encodeInputSequences(snapshot, out);
+        }
+    }
+
+    private static int flags(Snapshot snapshot) {
+        return (snapshot.hasProjectiles ? FLAG_PROJECTILES : 0) | (snapshot.hasInputSequences() ? FLAG_INPUT_SEQUENCES : 0);
+    }
+
+    private static void encodeProjectiles(Snapshot snapshot, ByteBuffer out) {
+        out.putShort((short) snapshot.projectiles);
+
+        for (int i = 0; i < snapshot.projectiles; i++) {
+            out.put(snapshot.projectileOwner[i])
+                    .putShort(quantize(snapshot.projectileX[i]))
+                    .putShort(quantize(snapshot.projectileY[i]));
+        }
+    }
+
+    private static void decodeProjectiles(ByteBuffer in, Snapshot snapshot) {
+        int count = in.getShort() & 0xFFFF;
+
+        snapshot.clearProjectiles(true);
+
+        for (int i = 0; i < count; i++) {
+            snapshot.addProjectile(in.get(), dequantize(in.getShort()), dequantize(in.getShort()));
+        }
+    }
+
+    private static void encodeInputSequences(Snapshot snapshot, ByteBuffer out) {
+        out.putInt(snapshot.inputSequence[0])
+                .putInt(snapshot.inputSequence[1]);
+    }
+
+    private static void decodeInputSequences(ByteBuffer in, Snapshot snapshot) {
+        snapshot.inputSequence[0] = in.getInt();
+        snapshot.inputSequence[1] = in.getInt();
+    }
+
+    /**
+     * Reads a binary snapshot frame (without its length prefix) into the given snapshot.
+     *
+     * @throws IllegalArgumentException if the frame is not a version 1 snapshot
+     */
+    public static void decode(ByteBuffer in, Snapshot snapshot) {
+        checkHeader(in, TYPE_SNAPSHOT);
+
+        snapshot.sequence = in.getInt();
+        int mask = in.get();
+        int flags = in.get();
+
+        snapshot.batX[0] = dequantize(in.getShort());
+        snapshot.batX[1] = dequantize(in.getShort());
+        snapshot.score[0] = in.getShort() & 0xFFFF;
+        snapshot.score[1] = in.getShort() & 0xFFFF;
+
+        for (int i = 0; i < 2; i++) {
+            if ((mask & (1 << i)) != 0) {
+                snapshot.setBall(i, dequantize(in.getShort()), dequantize(in.getShort()));
+            } else {
+                snapshot.clearBall(i);
+            }
+        }
+
+        if ((flags & FLAG_PROJECTILES) != 0) {
+            decodeProjectiles(in, snapshot);
+        } else {
+            snapshot.clearProjectiles(false);
+        }
+
+        if ((flags & FLAG_INPUT_SEQUENCES) != 0) {
+            decodeInputSequences(in, snapshot);
+        } else {
+            snapshot.inputSequence[0] = -1;
+            snapshot.inputSequence[1] = -1;
+        }
+    }
+
+    /**
+     * @return a delta frame that turns the baseline into the current snapshot
+     */
+    public static byte[] encodeDelta(Snapshot baseline, Snapshot current) {
+        int changed = changedFields(baseline, current);
+
+        ByteBuffer out = ByteBuffer.allocate(12 + fieldsSize(changed, current));
+        out.put((byte) VERSION)
+                .put(TYPE_DELTA)
+                .putInt(current.sequence)
+                .putInt(baseline.sequence)
+                .put((byte) changed)
+                .put((byte) presenceMask(current));
+
+        if ((changed & FIELD_BAT1_X) != 0)
+            out.putShort(quantize(current.batX[0]));
+
+        if ((changed & FIELD_BAT2_X) != 0)
+            out.putShort(quantize(current.batX[1]));
+
+        if ((changed & FIELD_SCORE1) != 0)
+            out.putShort((short) current.score[0]);
+
+        if ((changed & FIELD_SCORE2) != 0)
+            out.putShort((short) current.score[1]);
+
+        for (int i = 0; i < 2; i++) {
+            if ((changed & (FIELD_BALL1 << i)) != 0 && current.ball[i]) {
+                out.putShort(quantize(current.ballX[i]))
+                        .putShort(quantize(current.ballY[i]));
+            }
+        }
+
+        if ((changed & FIELD_PROJECTILES) != 0) {
+            encodeProjectiles(current, out);
+        }
+
+        if ((changed & FIELD_INPUT_SEQUENCES) != 0) {
+            encodeInputSequences(current, out);
+        }
+
+        return out.array();
+    }
+
+    /**
+     * @return sequence number of the baseline a delta frame was encoded against, without consuming the frame
+     */
+    public static int peekBaseline(ByteBuffer in) {
+        return in.getInt(in.position() + 6);
+    }
+
+    /**
+     * Applies a delta frame to the baseline and stores the result in the given snapshot,
+     * which may be the baseline itself.
+     *
+     * @throws IllegalArgumentException if the frame is not a delta against the given baseline
+     */
+    public static void decodeDelta(ByteBuffer in, Snapshot baseline, Snapshot snapshot) {
+        checkHeader(in, TYPE_DELTA);
+
+        int sequence = in.getInt();
+        int baselineSequence = in.getInt();
+
+        if (baselineSequence != baseline.sequence)
+            throw new IllegalArgumentException("Delta against " + baselineSequence + " applied to " + baseline.sequence);
+
+        int changed = in.get() & 0xFF;
+        int presence = in.get();
+
+        if (snapshot != baseline)
+            snapshot.copyFrom(baseline);
+
+        snapshot.sequence = sequence;
+
+        if ((changed & FIELD_BAT1_X) != 0)
+            snapshot.batX[0] = dequantize(in.getShort());
+
+        if ((changed & FIELD_BAT2_X) != 0)
+            snapshot.batX[1] = dequantize(in.getShort());
+
+        if ((changed & FIELD_SCORE1) != 0)
+            snapshot.score[0] = in.getShort() & 0xFFFF;
+
+        if ((changed & FIELD_SCORE2) != 0)
+            snapshot.score[1] = in.getShort() & 0xFFFF;
+
+        for (int i = 0; i < 2; i++) {
+            if ((presence & (1 << i)) == 0) {
+                snapshot.clearBall(i);
+            } else if ((changed & (FIELD_BALL1 << i)) != 0) {
+                snapshot.setBall(i, dequantize(in.getShort()), dequantize(in.getShort()));
+            }
+        }
+
+        if ((changed & FIELD_PROJECTILES) != 0) {
+            decodeProjectiles(in, snapshot);
+        }
+
+        if ((changed & FIELD_INPUT_SEQUENCES) != 0) {
+            decodeInputSequences(in, snapshot);
+        }
+    }
+
+    /**
+     * Fields are compared after quantization, so movement below the wire precision does not count as a change.
+     *
+     * @return mask of FIELD_* bits that differ between the two snapshots
+     */
+    static int changedFields(Snapshot baseline, Snapshot current) {
+        int changed = 0;
+
+        if (quantize(baseline.batX[0]) != quantize(current.batX[0]))
+            changed |= FIELD_BAT1_X;
+
+        if (quantize(baseline.batX[1]) != quantize(current.batX[1]))
+            changed |= FIELD_BAT2_X;
+
+        if (baseline.score[0] != current.score[0])
+            changed |= FIELD_SCORE1;
+
+        if (baseline.score[1] != current.score[1])
+            changed |= FIELD_SCORE2;
+
+        for (int i = 0; i < 2; i++) {
+            if (baseline.ball[i] != current.ball[i]
+                    || quantize(baseline.ballX[i]) != quantize(current.ballX[i])
+                    || quantize(baseline.ballY[i]) != quantize(current.ballY[i])) {
+                changed |= FIELD_BALL1 << i;
+            }
+        }
+
+        if (current.hasProjectiles && projectilesChanged(baseline, current)) {
+            changed |= FIELD_PROJECTILES;
+        }
+
+        if (baseline.inputSequence[0] != current.inputSequence[0] || baseline.inputSequence[1] != current.inputSequence[1]) {
+            changed |= FIELD_INPUT_SEQUENCES;
+        }
+
+        return changed;
+    }
+
+    private static boolean projectilesChanged(Snapshot baseline, Snapshot current) {
+        if (!baseline.hasProjectiles || baseline.projectiles != current.projectiles)
+            return true;
+
+        for (int i = 0; i < current.projectiles; i++) {
+            if (baseline.projectileOwner[i] != current.projectileOwner[i]
+                    || quantize(baseline.projectileX[i]) != quantize(current.projectileX[i])
+                    || quantize(baseline.projectileY[i]) != quantize(current.projectileY[i])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int fieldsSize(int changed, Snapshot current) {
+        int size = 2 * Integer.bitCount(changed & (FIELD_BAT1_X | FIELD_BAT2_X | FIELD_SCORE1 | FIELD_SCORE2));
+
+        for (int i = 0; i < 2; i++) {
+            if ((changed & (FIELD_BALL1 << i)) != 0 && current.ball[i])
+                size += 4;
+        }
+
+        if ((changed & FIELD_PROJECTILES) != 0)
+            size += 2 + current.projectiles * PROJECTILE_SIZE;
+
+        if ((changed & FIELD_INPUT_SEQUENCES) != 0)
+            size += INPUT_SEQUENCES_SIZE;
+
+        return size;
+    }
+
+    private static int presenceMask(Snapshot snapshot) {
+        return (snapshot.ball[0] ? 1 : 0) | (snapshot.ball[1] ? 2 : 0);
+    }
+
+    public static byte[] encodeEvent(String event) {
+        byte[] bytes = new byte[2 + event.length()];
+        bytes[0] = VERSION;
+        bytes[1] = TYPE_EVENT;
+
+        for (int i = 0; i < event.length(); i++) {
+            bytes[2 + i] = (byte) event.charAt(i);
+        }
+
+        return bytes;
+    }
+
+    public static String decodeEvent(ByteBuffer in) {
+        checkHeader(in, TYPE_EVENT);
+
+        byte[] bytes = new byte[in.remaining()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return frame type of the given frame, without consuming it
+     */
+    public static byte peekType(ByteBuffer in) {
+        return in.get(in.position() + 1);
+    }
+
+    static short quantize(double value) {
+        long q = Math.round(value * POSITION_SCALE);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, q));
+    }
+
+    static double dequantize(short value) {
+        return value / (double) POSITION_SCALE;
+    }
+
+    private static void checkHeader(ByteBuffer in, byte type) {
+        int version = in.get();
+        int actualType = in.get();
+
+        if (version != VERSION || actualType != type)
+            throw new IllegalArgumentException("Unsupported frame: version " + version + ", type " + actualType);
+    }
+}
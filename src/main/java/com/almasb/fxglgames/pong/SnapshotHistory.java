@@ -0,0 +1,80 @@
+package com.almasb.fxglgames.pong;
+
+/**
+ * Snapshots recently sent to a single binary client, used as baselines for delta frames.
+ * The client acknowledges the last snapshot it applied with an "ACK,sequence" message.
+ * Until an acknowledged snapshot is available, full snapshots (keyframes) are sent.
+ */
+public class SnapshotHistory {
+
+    public static final int SIZE = 32;
+
+    private final Snapshot[] sent = new Snapshot[SIZE];
+
+    private volatile int ackedSequence = -1;
+    private volatile int sentSequence = -1;
+
+    public SnapshotHistory() {
+        for (int i = 0; i < SIZE; i++) {
+            sent[i] = new Snapshot();
+            sent[i].sequence = -1;
+        }
+    }
+
+    public void acknowledge(int sequence) {
+        if (sequence > ackedSequence) {
+            ackedSequence = sequence;
+        }
+    }
+
+    public int getAckedSequence() {
+        return ackedSequence;
+    }
+
+    /**
+     * Sequence numbers count every snapshot of the group, including those skipped for a client on a reduced
+     * {@link SnapshotRate}, so the result is in snapshot intervals of the server whatever rate the client is sent.
+     *
+     * @return number of snapshots taken between the last acknowledged one and the last one sent, which is about
+     *         the round trip time in snapshot intervals, or 0 if nothing has been acknowledged yet
+     */
+    public int getUnacknowledged() {
+        int acked = ackedSequence;
+        return acked < 0 ? 0 : Math.max(0, sentSequence - acked);
+    }
+
+    /**
+     * @return the acknowledged snapshot, or null if there is none or it has dropped out of the history
+     */
+    public Snapshot getBaseline() {
+        if (ackedSequence < 0)
+            return null;
+
+        Snapshot baseline = sent[Math.floorMod(ackedSequence, SIZE)];
+        return baseline.sequence == ackedSequence ? baseline : null;
+    }
+
+    /**
+     * Encodes the snapshot for this client and remembers it as a possible future baseline.
+     * Without a usable baseline this is the keyframe shared by all clients.
+     */
+    byte[] encode(EncodedSnapshot encoded) {
+        Snapshot snapshot = encoded.getSnapshot();
+        Snapshot baseline = getBaseline();
+
+        byte[] frame;
+
+        if (baseline == null) {
+            frame = encoded.getKeyframe();
+        } else {
+            long start = System.nanoTime();
+            frame = SnapshotCodec.encodeDelta(baseline, snapshot);
+            EncodedSnapshot.ENCODE_TIME.recordNanos(System.nanoTime() - start);
+        }
+
+        sent[Math.floorMod(snapshot.sequence, SIZE)].copyFrom(snapshot);
+        sentSequence = snapshot.sequence;
+
+        return frame;
+    }
+}
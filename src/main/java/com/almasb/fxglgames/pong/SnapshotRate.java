@@ -0,0 +1,102 @@
+package com.almasb.fxglgames.pong;
+
+/**
+ * Decides how often a single client is sent snapshots, between {@link #MIN_RATE} and {@link #MAX_RATE} per second.
+ *
+ * A client is backlogged when the snapshot queued for it last time has not been written by the time the next one is due,
+ * so its socket drains slower than snapshots are produced. The rate is then cut to what the measured drain throughput
+ * can carry, given the bytes that a snapshot and the events between snapshots take, and it grows back towards the
+ * maximum while the client keeps up. Rates below the server's snapshot rate are met by skipping snapshots,
+ * so a client that keeps up gets every one.
+ */
+public class SnapshotRate {
+
+    // snapshots per second the server actually takes, which are a whole number of ticks apart
+    private static final double SERVER_RATE = 1 / TickScheduler.SNAPSHOT_INTERVAL;
+
+    /**
+     * Snapshots per second for a client that keeps up, can be overridden with the pong.maxSnapshotRate system property.
+     * Limited to the rate at which the server takes snapshots.
+     */
+    public static final double MAX_RATE = Math.min(Integer.getInteger("pong.maxSnapshotRate", Integer.MAX_VALUE), SERVER_RATE);
+
+    /**
+     * Snapshots per second a backlogged client is still sent, can be overridden with the pong.minSnapshotRate system property.
+     */
+    public static final double MIN_RATE = Math.max(1, Math.min(Integer.getInteger("pong.minSnapshotRate", 5), MAX_RATE));
+
+    // share of the throughput given to snapshots, so that the backlog drains
+    private static final double HEADROOM = 0.75;
+
+    // cut applied when backlogged, in case the bytes per snapshot are underestimated
+    private static final double BACKOFF = 0.75;
+
+    // the rate grows by this fraction of itself per second while the client keeps up
+    private static final double RECOVERY = 0.5;
+
+    private static final double SMOOTHING = 0.25;
+
+    private volatile double rate = MAX_RATE;
+    private volatile double throughput = 0;
+
+    // only touched by the thread that sends snapshots
+    private double credit = 0;
+    private double bytesPerSnapshot = 0;
+    private long lastTime = -1;
+    private long lastBytes = 0;
+
+    /**
+     * Called each time the server takes a snapshot, by the thread that sends them.
+     *
+     * @param now System.nanoTime()
+     * @param bytesOut bytes written to the client so far
+     * @param backlogged whether the last snapshot queued for the client has not been written yet
+     * @return true if the client should be sent this snapshot
+     */
+    public boolean onSnapshot(long now, long bytesOut, boolean backlogged) {
+        credit += rate / SERVER_RATE;
+
+        if (credit < 1)
+            return false;
+
+        credit -= 1;
+
+        if (lastTime >= 0 && now > lastTime) {
+            double dt = (now - lastTime) / 1_000_000_000.0;
+            long bytes = bytesOut - lastBytes;
+
+            throughput += (bytes / dt - throughput) * SMOOTHING;
+
+            if (backlogged) {
+                double sustainable = bytesPerSnapshot > 0 ? HEADROOM * throughput / bytesPerSnapshot : 0;
+                rate = limit(Math.min(rate * BACKOFF, sustainable));
+            } else {
+                // everything queued since the last snapshot has been written, which is one snapshot and its events
+                bytesPerSnapshot = bytesPerSnapshot == 0 ? bytes : bytesPerSnapshot + (bytes - bytesPerSnapshot) * SMOOTHING;
+                rate = limit(rate * (1 + RECOVERY * dt));
+            }
+        }
+
+        lastTime = now;
+        lastBytes = bytesOut;
+        return true;
+    }
+
+    private static double limit(double rate) {
+        return Math.max(MIN_RATE, Math.min(rate, MAX_RATE));
+    }
+
+    /**
+     * @return snapshots per second the client is currently sent
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * @return smoothed bytes per second written to the client, its drain throughput while it is backlogged
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+}
@@ -0,0 +1,300 @@
+package com.almasb.fxglgames.pong;
+
+import java.util.Arrays;
+
+/**
+ * Continuous collision detection for small square bodies moving at constant velocity inside the screen
+ * bounds, among square boxes such as the bats.
+ *
+ * A move finds the earliest contact along the body's path within the tick (swept AABB against each box,
+ * expanded by the body size, and against each wall), moves the body there, resolves the contact and
+ * continues with the rest of the tick. However fast a body moves, it never passes through a wall or box.
+ *
+ * State is kept by the caller in primitive arrays, one entry per body.
+ *
+ * Boxes are binned into a uniform grid of box-sized cells by {@link #updateBoxes()}, and a move only tests
+ * the boxes in the cells its path crosses, so the cost of a move does not depend on the number of boxes
+ * elsewhere on the screen and the cost of a tick grows linearly with the number of bodies.
+ */
+public class SweptPhysics {
+
+    public static final int WALL_LEFT = 0;
+    public static final int WALL_RIGHT = 1;
+    public static final int WALL_TOP = 2;
+    public static final int WALL_BOTTOM = 3;
+
+    // more contacts than this within one tick are left for the next tick
+    private static final int MAX_CONTACTS = 8;
+
+    private static final int NONE = -1;
+    private static final int AXIS_X = 0;
+    private static final int AXIS_Y = 1;
+
+    public interface Contacts {
+
+        void onWall(int body, int wall);
+
+        /**
+         * @return true if the body bounces off the box, false if the contact has removed it
+         */
+        boolean onBox(int body, int box);
+    }
+
+    private final double width;
+    private final double height;
+    private final double bodySize;
+    private final double boxSize;
+
+    private final double[] boxX;
+    private final double[] boxY;
+
+    // uniform grid: the boxes overlapping cell c are cellBoxes[cellStart[c]] up to cellBoxes[cellStart[c + 1]]
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart;
+    private final int[] cellBoxes;
+    private final int[] cellFill;
+
+    // box b has already been tested by the current sweep if visited[b] == sweep
+    private final int[] visited;
+    private int sweep = 0;
+
+    // results of the last call to sweepBox
+    private double entry;
+    private int axis;
+
+    /**
+     * @param boxX x of each box, the array is kept so that boxes can move between ticks, see {@link #updateBoxes()}
+     * @param boxY y of each box
+     */
+    public SweptPhysics(double width, double height, double bodySize, double boxSize, double[] boxX, double[] boxY) {
+        this.width = width;
+        this.height = height;
+        this.bodySize = bodySize;
+        this.boxSize = boxSize;
+        this.boxX = boxX;
+        this.boxY = boxY;
+
+        cellSize = boxSize;
+        columns = (int) Math.ceil(width / cellSize);
+        rows = (int) Math.ceil(height / cellSize);
+        cellStart = new int[columns * rows + 1];
+        cellFill = new int[columns * rows];
+
+        // a box covers at most two cells per axis, since cells are as large as boxes
+        cellBoxes = new int[4 * boxX.length];
+        visited = new int[boxX.length];
+
+        updateBoxes();
+    }
+
+    /**
+     * Rebins the boxes into the grid. Call after moving boxes and before the next move.
+     */
+    public void updateBoxes() {
+        Arrays.fill(cellStart, 0);
+
+        // count the boxes in each cell, then turn the counts into start offsets and fill
+        for (int b = 0; b < boxX.length; b++) {
+            for (int row = row(boxY[b]); row <= row(boxY[b] + boxSize); row++) {
+                for (int column = column(boxX[b]); column <= column(boxX[b] + boxSize); column++) {
+                    cellStart[row * columns + column + 1]++;
+                }
+            }
+        }
+
+        for (int c = 0; c < cellFill.length; c++) {
+            cellStart[c + 1] += cellStart[c];
+            cellFill[c] = cellStart[c];
+        }
+
+        for (int b = 0; b < boxX.length; b++) {
+            for (int row = row(boxY[b]); row <= row(boxY[b] + boxSize); row++) {
+                for (int column = column(boxX[b]); column <= column(boxX[b] + boxSize); column++) {
+                    cellBoxes[cellFill[row * columns + column]++] = b;
+                }
+            }
+        }
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / cellSize)));
+    }
+
+    /**
+     * Moves body i for dt seconds, bouncing off walls and off boxes unless the contact removes it.
+     *
+     * @return false if the body was removed by a contact
+     */
+    public boolean move(int i, double[] x, double[] y, double[] vx, double[] vy, double dt, Contacts contacts) {
+        double remaining = dt;
+
+        for (int contact = 0; contact < MAX_CONTACTS && remaining > 0; contact++) {
+            double dx = vx[i] * remaining;
+            double dy = vy[i] * remaining;
+
+            double first = 1;
+            int wall = NONE;
+            int box = NONE;
+            int boxAxis = AXIS_X;
+
+            // walls only count when moving towards them, a body already past one is bounced back at once
+            if (dx < 0) {
+                double t = Math.max(0, -x[i] / dx);
+                if (t < first) { first = t; wall = WALL_LEFT; }
+            } else if (dx > 0) {
+                double t = Math.max(0, (width - bodySize - x[i]) / dx);
+                if (t < first) { first = t; wall = WALL_RIGHT; }
+            }
+
+            if (dy < 0) {
+                double t = Math.max(0, -y[i] / dy);
+                if (t < first) { first = t; wall = WALL_TOP; }
+            } else if (dy > 0) {
+                double t = Math.max(0, (height - bodySize - y[i]) / dy);
+                if (t < first) { first = t; wall = WALL_BOTTOM; }
+            }
+
+            // only the boxes in the cells overlapped by the bounding box of the path can be hit
+            sweep++;
+
+            int lastRow = row(Math.max(y[i], y[i] + dy) + bodySize);
+            int lastColumn = column(Math.max(x[i], x[i] + dx) + bodySize);
+
+            for (int row = row(Math.min(y[i], y[i] + dy)); row <= lastRow; row++) {
+                for (int column = column(Math.min(x[i], x[i] + dx)); column <= lastColumn; column++) {
+                    int cell = row * columns + column;
+
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                        int b = cellBoxes[k];
+
+                        if (visited[b] == sweep)
+                            continue;
+
+                        visited[b] = sweep;
+
+                        if (sweepBox(x[i], y[i], dx, dy, b) && entry < first) {
+                            first = entry;
+                            box = b;
+                            boxAxis = axis;
+                            wall = NONE;
+                        }
+                    }
+                }
+            }
+
+            if (wall == NONE && box == NONE) {
+                x[i] += dx;
+                y[i] += dy;
+                return true;
+            }
+
+            x[i] += dx * first;
+            y[i] += dy * first;
+            remaining -= remaining * first;
+
+            if (box != NONE) {
+                if (!contacts.onBox(i, box))
+                    return false;
+
+                bounceOffBox(i, x, y, vx, vy, box, boxAxis);
+            } else {
+                bounceOffWall(i, vx, vy, wall);
+                contacts.onWall(i, wall);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Sweeps a body from (x, y) by (dx, dy) against box b, expanded by the body size so that the body can be
+     * treated as a point. A body that already overlaps the box hits it at once, on the axis of least penetration.
+     *
+     * @return true if the body hits the box within the move, with the fraction of the move in entry and the axis in axis
+     */
+    private boolean sweepBox(double x, double y, double dx, double dy, int b) {
+        double minX = boxX[b] - bodySize;
+        double maxX = boxX[b] + boxSize;
+        double minY = boxY[b] - bodySize;
+        double maxY = boxY[b] + boxSize;
+
+        double entryX, exitX, entryY, exitY;
+
+        if (dx == 0) {
+            if (x <= minX || x >= maxX)
+                return false;
+
+            entryX = Double.NEGATIVE_INFINITY;
+            exitX = Double.POSITIVE_INFINITY;
+        } else {
+            double t1 = (minX - x) / dx;
+            double t2 = (maxX - x) / dx;
+            entryX = Math.min(t1, t2);
+            exitX = Math.max(t1, t2);
+        }
+
+        if (dy == 0) {
+            if (y <= minY || y >= maxY)
+                return false;
+
+            entryY = Double.NEGATIVE_INFINITY;
+            exitY = Double.POSITIVE_INFINITY;
+        } else {
+            double t1 = (minY - y) / dy;
+            double t2 = (maxY - y) / dy;
+            entryY = Math.min(t1, t2);
+            exitY = Math.max(t1, t2);
+        }
+
+        double enter = Math.max(entryX, entryY);
+        double exit = Math.min(exitX, exitY);
+
+        if (enter >= exit || exit <= 0 || enter > 1)
+            return false;
+
+        entry = Math.max(0, enter);
+        axis = entryX > entryY ? AXIS_X : AXIS_Y;
+        return true;
+    }
+
+    // away from the centre of the box on the axis of contact, and just outside it so the same contact is not found again
+    private void bounceOffBox(int i, double[] x, double[] y, double[] vx, double[] vy, int b, int contactAxis) {
+        double half = bodySize / 2;
+        double boxCentre = boxSize / 2;
+
+        if (contactAxis == AXIS_X) {
+            boolean before = x[i] + half < boxX[b] + boxCentre;
+
+            x[i] = before ? boxX[b] - bodySize : boxX[b] + boxSize;
+            vx[i] = before ? -Math.abs(vx[i]) : Math.abs(vx[i]);
+        } else {
+            boolean above = y[i] + half < boxY[b] + boxCentre;
+
+            y[i] = above ? boxY[b] - bodySize : boxY[b] + boxSize;
+            vy[i] = above ? -Math.abs(vy[i]) : Math.abs(vy[i]);
+        }
+    }
+
+    private static void bounceOffWall(int i, double[] vx, double[] vy, int wall) {
+        switch (wall) {
+            case WALL_LEFT:
+                vx[i] = Math.abs(vx[i]);
+                break;
+            case WALL_RIGHT:
+                vx[i] = -Math.abs(vx[i]);
+                break;
+            case WALL_TOP:
+                vy[i] = Math.abs(vy[i]);
+                break;
+            case WALL_BOTTOM:
+                vy[i] = -Math.abs(vy[i]);
+                break;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.almasb.fxglgames.pong;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Runs the simulation at a fixed rate, independent of how often {@link #update()} is called,
+ * and emits snapshots at a separate (usually lower) rate. The snapshot rate is rounded
+ * so that a snapshot follows every n-th tick.
+ *
+ * Every simulation tick is given the same dt. If the caller falls behind, missed ticks are
+ * caught up on the next update, up to a limit; ticks beyond the limit are skipped so that
+ * a long stall does not turn into a burst of simulation.
+ */
+public class TickScheduler {
+
+    /**
+     * Simulation and snapshot rates, in Hz. They can be overridden with the
+     * pong.tickRate and pong.snapshotRate system properties.
+     */
+    public static final int TICK_RATE = Integer.getInteger("pong.tickRate", 60);
+    public static final int SNAPSHOT_RATE = Integer.getInteger("pong.snapshotRate", 60);
+
+    /**
+     * Seconds between two snapshots at the default rates. Since a snapshot follows every n-th tick,
+     * this can differ from 1 / SNAPSHOT_RATE, e.g. 60 ticks and 25 snapshots per second give a snapshot every 2 ticks.
+     */
+    public static final double SNAPSHOT_INTERVAL = ticksPerSnapshot(TICK_RATE, SNAPSHOT_RATE) / (double) TICK_RATE;
+
+    /**
+     * Maximum number of ticks a single update runs to catch up, can be overridden with the pong.maxCatchUpTicks system property.
+     */
+    public static final int MAX_CATCH_UP_TICKS = Integer.getInteger("pong.maxCatchUpTicks", 5);
+
+    private static final Metrics.Histogram TICK_TIME = Metrics.histogram("pong_tick_seconds", "Time taken by a simulation tick");
+    private static final Metrics.Counter SKIPPED_TICKS = Metrics.counter("pong_ticks_skipped_total", "Ticks dropped because they exceeded the catch up limit");
+
+    private final double tickDuration;
+    private final int ticksPerSnapshot;
+    private final int maxCatchUpTicks;
+
+    private final DoubleConsumer onTick;
+    private final Runnable onSnapshot;
+
+    private long lastTime = -1;
+    private double accumulator = 0;
+    private int ticksSinceSnapshot = 0;
+
+    private long tick = 0;
+    private long skippedTicks = 0;
+    private double timeBehind = 0;
+
+    /**
+     * @param tickRate simulation ticks per second
+     * @param snapshotRate snapshots per second, at most the tick rate
+     * @param maxCatchUpTicks maximum number of ticks run by a single update
+     * @param onTick called once per tick with the fixed dt in seconds
+     * @param onSnapshot called after a tick when a snapshot is due
+     */
+    public TickScheduler(int tickRate, int snapshotRate, int maxCatchUpTicks, DoubleConsumer onTick, Runnable onSnapshot) {
+        if (tickRate <= 0 || snapshotRate <= 0 || maxCatchUpTicks <= 0)
+            throw new IllegalArgumentException("Rates and catch up limit must be positive");
+
+        this.tickDuration = 1.0 / tickRate;
+        this.ticksPerSnapshot = ticksPerSnapshot(tickRate, snapshotRate);
+        this.maxCatchUpTicks = maxCatchUpTicks;
+        this.onTick = onTick;
+        this.onSnapshot = onSnapshot;
+    }
+
+    private static int ticksPerSnapshot(int tickRate, int snapshotRate) {
+        return Math.max(1, Math.round((float) tickRate / snapshotRate));
+    }
+
+    /**
+     * Runs all ticks that are due since the last update, measured with the system clock.
+     */
+    public void update() {
+        long now = System.nanoTime();
+
+        if (lastTime < 0) {
+            lastTime = now;
+        }
+
+        advance((now - lastTime) / 1_000_000_000.0);
+        lastTime = now;
+    }
+
+    /**
+     * Runs all ticks that are due after the given amount of time has passed.
+     *
+     * @param elapsed seconds since the previous call
+     */
+    public void advance(double elapsed) {
+        accumulator += elapsed;
+
+        int ticks = 0;
+        boolean snapshotDue = false;
+
+        while (accumulator >= tickDuration && ticks < maxCatchUpTicks) {
+            long start = System.nanoTime();
+            onTick.accept(tickDuration);
+            TICK_TIME.recordNanos(System.nanoTime() - start);
+
+            accumulator -= tickDuration;
+            tick++;
+            ticks++;
+
+            if (++ticksSinceSnapshot >= ticksPerSnapshot) {
+                ticksSinceSnapshot = 0;
+                snapshotDue = true;
+            }
+        }
+
+        timeBehind = accumulator;
+
+        if (accumulator >= tickDuration) {
+            long skipped = (long) (accumulator / tickDuration);
+            skippedTicks += skipped;
+            SKIPPED_TICKS.add(skipped);
+            accumulator -= skipped * tickDuration;
+        }
+
+        // snapshots are not caught up, only the latest state is worth sending
+        if (snapshotDue) {
+            onSnapshot.run();
+        }
+    }
+
+    public double getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * @return seconds between two snapshots, the snapshot rate actually achieved is the inverse
+     */
+    public double getSnapshotInterval() {
+        return ticksPerSnapshot * tickDuration;
+    }
+
+    /**
+     * @return number of ticks run so far
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return number of ticks dropped because they exceeded the catch up limit
+     */
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    /**
+     * @return seconds of simulation time that were due but not run by the last update,
+     *         more than one tick means the catch up limit was hit and the excess was skipped
+     */
+    public double getTimeBehind() {
+        return timeBehind;
+    }
+}
@@ -0,0 +1,134 @@
+package com.almasb.fxglgames.pong;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Optional datagram channel for snapshots, enabled with -Dpong.udp=true.
+ *
+ * Each TCP client is sent "UDP_TOKEN,token" on connect. A client that wants its snapshots over UDP
+ * sends the same message in a datagram to {@link #PORT} from the address it wants them on, and keeps
+ * resending it until the first snapshot arrives. From then on the client's snapshots are sent as binary
+ * keyframes (see {@link SnapshotCodec}) in one datagram each, and clients drop any whose sequence is not newer
+ * than the last one applied. Events are still sent over TCP.
+ *
+ * For testing on loopback, -Dpong.udpLoss=0.2 drops that fraction of outgoing snapshots.
+ */
+public class UdpChannel {
+
+    public static final boolean ENABLED = Boolean.getBoolean("pong.udp");
+
+    public static final int PORT = Integer.getInteger("pong.udpPort", 55557);
+
+    public static final double LOSS = Double.parseDouble(System.getProperty("pong.udpLoss", "0"));
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<Long, Client> clients = new ConcurrentHashMap<>();
+
+    private static final Metrics.Counter sent = Metrics.counter("pong_udp_datagrams_sent_total", "Snapshot datagrams sent");
+    private static final Metrics.Counter dropped = Metrics.counter("pong_udp_datagrams_dropped_total", "Snapshot datagrams that could not be sent or were dropped with pong.udpLoss");
+
+    private DatagramChannel channel;
+
+    public void start(int port) throws IOException {
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+
+        var t = new Thread(this::receive, "pong-udp");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void stop() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Warning: " + e);
+        }
+    }
+
+    /**
+     * @return the handshake message that lets the client bind a UDP address to its connection
+     */
+    String register(Client client) {
+        long token;
+
+        do {
+            token = random.nextLong() & Long.MAX_VALUE;
+        } while (clients.putIfAbsent(token, client) != null);
+
+        return NetworkMessages.UDP_TOKEN + "," + token;
+    }
+
+    void unregister(Client client) {
+        clients.values().remove(client);
+    }
+
+    void send(SocketAddress address, byte[] datagram) {
+        if (LOSS > 0 && ThreadLocalRandom.current().nextDouble() < LOSS) {
+            dropped.increment();
+            return;
+        }
+
+        try {
+            channel.send(ByteBuffer.wrap(datagram), address);
+            sent.increment();
+        } catch (IOException e) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * @return number of datagrams sent
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * @return number of datagrams that could not be sent, or were dropped on purpose with pong.udpLoss
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        String prefix = NetworkMessages.UDP_TOKEN + ",";
+
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                SocketAddress address = channel.receive(buffer);
+                buffer.flip();
+
+                var message = StandardCharsets.US_ASCII.decode(buffer).toString().trim();
+
+                if (!message.startsWith(prefix))
+                    continue;
+
+                var client = clients.get(Long.parseLong(message.substring(prefix.length())));
+
+                // a repeated handshake from a new address rebinds the client
+                if (client != null) {
+                    client.bindDatagrams(this, address);
+                }
+            } catch (NumberFormatException e) {
+                // not a token, ignore
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.out.println("Warning: UDP receive failed: " + e);
+            }
+        }
+    }
+}
@@ -4,4 +4,5 @@
 open module pong.main {
     requires com.almasb.fxgl.all;
     requires kotlin.stdlib;
+    requires jdk.httpserver;
 }
\ No newline at end of file
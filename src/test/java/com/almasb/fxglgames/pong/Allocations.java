@@ -0,0 +1,26 @@
+package com.almasb.fxglgames.pong;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bytes allocated by the calling thread, as counted by the HotSpot thread MX bean,
+ * for tests that check a hot path does not allocate once warmed up.
+ */
+final class Allocations {
+
+    /**
+     * The measurement itself may allocate a little, an allocation per call would be orders of magnitude more.
+     */
+    static final long TOLERANCE = 16 * 1024;
+
+    private Allocations() { }
+
+    static long measure(Runnable action) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+
+        long before = threads.getThreadAllocatedBytes(id);
+        action.run();
+        return threads.getThreadAllocatedBytes(id) - before;
+    }
+}
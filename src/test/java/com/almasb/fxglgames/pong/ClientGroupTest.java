@@ -0,0 +1,162 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientGroupTest {
+
+    private final List<String> calls = new ArrayList<>();
+
+    private final ClientGroup group = new ClientGroup(new PongServer.Listener() {
+        @Override
+        public void onPlayerConnected(int player) {
+            calls.add("connected " + player);
+        }
+
+        @Override
+        public void onPlayerResumed(int player) {
+            calls.add("resumed " + player);
+        }
+    }, Runnable::run, false);
+
+    private TestClient join() {
+        var client = new TestClient();
+        assertTrue(group.join(client));
+        group.flush();
+        return client;
+    }
+
+    @Test
+    void firstTwoClientsGetTheSlotsWithTokens() {
+        var first = join();
+        var second = join();
+
+        assertEquals(0, first.getPlayer());
+        assertEquals(1, second.getPlayer());
+        assertNotEquals(0, first.getToken());
+        assertNotEquals(first.getToken(), second.getToken());
+        assertFalse(group.join(new TestClient()));
+        assertEquals(List.of("connected 0", "connected 1"), calls);
+    }
+
+    @Test
+    void slotOfADisconnectedPlayerIsHeld() {
+        var first = join();
+        join();
+
+        group.leave(first);
+
+        assertEquals(-1, first.getPlayer());
+        assertNull(first.getGroup());
+        assertTrue(group.hasHeldSlots());
+        assertFalse(group.hasFreeSlot());
+        assertTrue(group.canResume(first.getToken()));
+        assertFalse(group.join(new TestClient()));
+    }
+
+    @Test
+    void resumeTakesTheHeldSlotBackWithANewToken() {
+        var first = join();
+        join();
+
+        var snapshot = new Snapshot();
+        snapshot.setSequence(5);
+        group.sendSnapshot(snapshot);
+
+        long token = first.getToken();
+        group.leave(first);
+
+        var resumed = new TestClient();
+        assertTrue(group.resume(resumed, token));
+        group.flush();
+
+        assertEquals(0, resumed.getPlayer());
+        assertSame(group, resumed.getGroup());
+        assertFalse(group.hasHeldSlots());
+        assertNotEquals(0, resumed.getToken());
+        assertNotEquals(token, resumed.getToken());
+        assertEquals(SnapshotCodec.toText(snapshot), resumed.written.get(resumed.written.size() - 1));
+        assertEquals("resumed 0", calls.get(calls.size() - 1));
+
+        // the old token is spent
+        assertFalse(group.canResume(token));
+        assertFalse(group.resume(new TestClient(), token));
+    }
+
+    @Test
+    void resumeTakesOverASlotWhoseConnectionIsStillOpen() {
+        var first = join();
+        long token = first.getToken();
+
+        var resumed = new TestClient();
+        assertTrue(group.resume(resumed, token));
+
+        assertTrue(first.terminated);
+        assertEquals(-1, first.getPlayer());
+        assertEquals(0, resumed.getPlayer());
+        assertEquals(1, group.size());
+    }
+
+    @Test
+    void quittingPlayerFreesItsSlotAtOnce() {
+        var first = join();
+        long token = first.getToken();
+
+        group.release(first);
+
+        assertFalse(group.hasHeldSlots());
+        assertTrue(group.hasFreeSlot());
+        assertFalse(group.canResume(token));
+
+        var next = join();
+        assertEquals(0, next.getPlayer());
+    }
+
+    @Test
+    void unknownTokensAreRejected() {
+        join();
+
+        assertFalse(group.canResume(0));
+        assertFalse(group.canResume(12345));
+        assertFalse(group.resume(new TestClient(), 12345));
+    }
+
+    @Test
+    void inputIsOnlyRecordedForTheClientsOwnSlot() {
+        var first = join();
+        join();
+
+        List<String> applied = new ArrayList<>();
+
+        first.onCommand(1, Command.LEFT_PRESS);
+        first.onCommand(0, Command.RIGHT_PRESS);
+
+        group.getInput().apply(new InputBuffer.Target() {
+            @Override
+            public void left(int player) {
+                applied.add(player + ":left");
+            }
+
+            @Override
+            public void right(int player) {
+                applied.add(player + ":right");
+            }
+
+            @Override
+            public void stop(int player) {
+                applied.add(player + ":stop");
+            }
+
+            @Override
+            public void fire(int player) {
+                applied.add(player + ":fire");
+            }
+        });
+
+        assertEquals(List.of("0:right"), applied);
+    }
+}
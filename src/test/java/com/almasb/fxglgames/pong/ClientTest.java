@@ -0,0 +1,111 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientTest {
+
+    private final ClientGroup group = new ClientGroup(player -> { }, Runnable::run, false);
+
+    private final List<String> calls = new ArrayList<>();
+
+    private final Lobby lobby = new Lobby() {
+        @Override
+        public void onConnected(Client client) {
+            calls.add("connected");
+            group.join(client);
+        }
+
+        @Override
+        public void onDisconnected(Client client) {
+            calls.add("disconnected");
+            group.leave(client);
+        }
+
+        @Override
+        public void onResume(Client client, long token) {
+            calls.add("resume");
+            group.resume(client, token);
+        }
+    };
+
+    private TestClient connect() {
+        var client = new TestClient();
+        client.bindLobby(lobby);
+        return client;
+    }
+
+    @Test
+    void clientThatResumesBeforeItIsMatchedTakesNoFreeSlot() {
+        var player = connect();
+        player.match();
+        group.flush();
+        group.leave(player);
+        calls.clear();
+
+        var reconnected = connect();
+        reconnected.onResume(player.getToken());
+        reconnected.match();
+
+        assertEquals(List.of("resume"), calls);
+        assertEquals(0, reconnected.getPlayer());
+        assertTrue(group.hasFreeSlot());
+    }
+
+    @Test
+    void clientWithAnUnknownTokenIsMatched() {
+        var client = connect();
+        client.onResume(42);
+        client.match();
+
+        assertEquals(List.of("resume", "connected"), calls);
+        assertEquals(0, client.getPlayer());
+    }
+
+    @Test
+    void clientThatDisconnectsBeforeItIsMatchedIsNeverMatched() {
+        var client = connect();
+        client.leaveLobby();
+        client.match();
+
+        assertEquals(List.of(), calls);
+        assertNull(client.getGroup());
+    }
+
+    @Test
+    void metricsAreGroupedByFamily() {
+        var first = new TestClient();
+        var second = new TestClient();
+
+        first.recordSent(2, 300);
+        first.getRtt().nextPing(0);
+        first.getRtt().onPong(0, 0, 25_000);
+
+        var out = new StringBuilder();
+        Client.collectMetrics(out, List.of(first, second));
+        var lines = List.of(out.toString().split("\n"));
+
+        int help = lines.indexOf("# HELP pong_connection_bytes_out_total Bytes of messages written to each client");
+
+        assertTrue(help >= 0, out.toString());
+        assertEquals("# TYPE pong_connection_bytes_out_total counter", lines.get(help + 1));
+        assertEquals("pong_connection_bytes_out_total{client=\"" + first.getId() + "\"} 300", lines.get(help + 2));
+        assertEquals("pong_connection_bytes_out_total{client=\"" + second.getId() + "\"} 0", lines.get(help + 3));
+        assertTrue(lines.get(help + 4).startsWith("# HELP "));
+
+        assertTrue(lines.contains("pong_connection_rtt_seconds{client=\"" + first.getId() + "\"} 0.025"), out.toString());
+        assertEquals(1, lines.stream().filter(line -> line.equals("# TYPE pong_connection_rtt_seconds gauge")).count());
+    }
+
+    @Test
+    void noClientsWriteNoFamilies() {
+        var out = new StringBuilder();
+        Client.collectMetrics(out, List.of());
+
+        assertEquals("", out.toString());
+    }
+}
@@ -0,0 +1,181 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandDecoderTest {
+
+    private static class Recorder implements CommandDecoder.CommandHandler {
+
+        final List<String> commands = new ArrayList<>();
+        final List<Integer> sequences = new ArrayList<>();
+        boolean acceptSequences = true;
+        long pongServerTime = -1;
+        long pongClientTime = -1;
+        long resumeToken = -1;
+
+        @Override
+        public void onCommand(int player, Command command) {
+            commands.add(player + ":" + command);
+        }
+
+        @Override
+        public boolean onSequence(int sequence) {
+            sequences.add(sequence);
+            return acceptSequences;
+        }
+
+        @Override
+        public void onPong(long serverTime, long clientTime) {
+            pongServerTime = serverTime;
+            pongClientTime = clientTime;
+        }
+
+        @Override
+        public void onResume(long token) {
+            resumeToken = token;
+        }
+    }
+
+    private static ByteBuffer bytes(String message) {
+        return ByteBuffer.wrap(message.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void decodesCommandsOfBothPlayersAndSkipsTheName() {
+        var recorder = new Recorder();
+
+        CommandDecoder.decode("A_PLAYERDOWN,A_PLAYERDOWN,D_ENEMYUP,W_PLAYERDOWN,PLAYERQUIT", recorder);
+
+        assertEquals(List.of("0:LEFT_PRESS", "1:RIGHT_RELEASE", "0:FIRE_PRESS", "0:QUIT"), recorder.commands);
+    }
+
+    @Test
+    void bytesAndCharsDecodeTheSame() {
+        var fromChars = new Recorder();
+        var fromBytes = new Recorder();
+        String message = "bot,D_ENEMYDOWN,unknown,A_PLAYERUP,ENEMYQUIT";
+
+        CommandDecoder.decode(message, fromChars);
+        CommandDecoder.decode(bytes(message), fromBytes);
+
+        assertEquals(fromChars.commands, fromBytes.commands);
+        assertEquals(3, fromChars.commands.size());
+    }
+
+    @Test
+    void decodingLeavesTheFrameUnchanged() {
+        var frame = bytes("xx,A_PLAYERDOWN,yy");
+        frame.position(3).limit(15);
+
+        var recorder = new Recorder();
+        CommandDecoder.decode(frame, recorder);
+
+        // the frame starts at its position, so "A_PLAYERDOWN" is taken as the name
+        assertEquals(List.of(), recorder.commands);
+        assertEquals(3, frame.position());
+        assertEquals(15, frame.limit());
+    }
+
+    @Test
+    void sequenceNumberIsPassedBeforeTheCommands() {
+        var recorder = new Recorder();
+
+        CommandDecoder.decode("name,#42,A_PLAYERDOWN", recorder);
+
+        assertEquals(List.of(42), recorder.sequences);
+        assertEquals(List.of("0:LEFT_PRESS"), recorder.commands);
+    }
+
+    @Test
+    void rejectedSequenceNumberDropsTheCommands() {
+        var recorder = new Recorder();
+        recorder.acceptSequences = false;
+
+        CommandDecoder.decode("name,#7,A_PLAYERDOWN", recorder);
+
+        assertEquals(List.of(7), recorder.sequences);
+        assertEquals(List.of(), recorder.commands);
+    }
+
+    @Test
+    void sequenceNumberOnlyCountsAsSecondToken() {
+        var recorder = new Recorder();
+
+        CommandDecoder.decode("name,A_PLAYERDOWN,#9", recorder);
+        CommandDecoder.decode("name,#x,A_PLAYERUP", recorder);
+
+        assertEquals(List.of(), recorder.sequences);
+        assertEquals(List.of("0:LEFT_PRESS", "0:LEFT_RELEASE"), recorder.commands);
+    }
+
+    @Test
+    void parsesAcks() {
+        assertEquals(123, CommandDecoder.parseAck("ACK,123"));
+        assertEquals(123, CommandDecoder.parseAck(bytes("ACK,123")));
+        assertEquals(-1, CommandDecoder.parseAck("ACK,"));
+        assertEquals(-1, CommandDecoder.parseAck("ACK,12x"));
+        assertEquals(-1, CommandDecoder.parseAck("ACK,99999999999"));
+        assertEquals(-1, CommandDecoder.parseAck("name,A_PLAYERDOWN"));
+    }
+
+    @Test
+    void parsesPongsAndResumes() {
+        var recorder = new Recorder();
+
+        CommandDecoder.decode("PONG,123456789012,5000000000", recorder);
+        CommandDecoder.decode(bytes("RESUME,987654321"), recorder);
+
+        assertEquals(123456789012L, recorder.pongServerTime);
+        assertEquals(5000000000L, recorder.pongClientTime);
+        assertEquals(987654321L, recorder.resumeToken);
+        assertEquals(List.of(), recorder.commands);
+    }
+
+    @Test
+    void ignoresMalformedPongs() {
+        var recorder = new Recorder();
+
+        CommandDecoder.decode("PONG,1", recorder);
+        CommandDecoder.decode("PONG,x,2", recorder);
+
+        assertEquals(-1, recorder.pongServerTime);
+    }
+
+    @Test
+    void steadyStateDecodingDoesNotAllocate() {
+        var bytes = bytes("name,#1,A_PLAYERDOWN,D_PLAYERUP,W_ENEMYDOWN");
+        CharSequence chars = "name,#2,A_ENEMYDOWN,D_ENEMYUP,W_PLAYERDOWN";
+        var acks = bytes("ACK,12345");
+
+        int[] count = new int[1];
+        CommandDecoder.CommandHandler handler = (player, command) -> count[0]++;
+
+        Runnable decode = () -> {
+            CommandDecoder.decode(bytes, handler);
+            CommandDecoder.decode(chars, handler);
+            CommandDecoder.parseAck(acks);
+        };
+
+        int n = 200_000;
+
+        for (int i = 0; i < n; i++) {
+            decode.run();
+        }
+
+        long allocated = Allocations.measure(() -> {
+            for (int i = 0; i < n; i++) {
+                decode.run();
+            }
+        });
+
+        assertEquals(2 * 2 * n * 3, count[0]);
+        assertTrue(allocated < Allocations.TOLERANCE, "Allocated " + allocated + " bytes in " + n + " decodes");
+    }
+}
@@ -0,0 +1,113 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameDecoderTest {
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(FrameDecoder.BUFFER_SIZE);
+    private final List<String> frames = new ArrayList<>();
+
+    private void onFrame(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.duplicate().get(bytes);
+        frames.add(new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    // feeds the bytes one read at a time, as small as the network may split them
+    private void feedByteByByte(FrameDecoder decoder, byte[] bytes) throws ProtocolException {
+        for (byte b : bytes) {
+            buffer.put(b);
+            decoder.decode(this::onFrame);
+        }
+    }
+
+    private static byte[] lengthPrefixed(String... payloads) {
+        var out = ByteBuffer.allocate(1024);
+
+        for (String payload : payloads) {
+            byte[] bytes = payload.getBytes(StandardCharsets.US_ASCII);
+            out.putShort((short) bytes.length).put(bytes);
+        }
+
+        byte[] result = new byte[out.position()];
+        out.flip().get(result);
+        return result;
+    }
+
+    @Test
+    void linesSplitAcrossReadsAreJoined() throws ProtocolException {
+        var decoder = new FrameDecoder(buffer, Framing.LINE);
+
+        feedByteByByte(decoder, "name,A_PLAYERDOWN\nname,D_PLAYERUP\r\n\n".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(List.of("name,A_PLAYERDOWN", "name,D_PLAYERUP", ""), frames);
+    }
+
+    @Test
+    void severalLinesInOneRead() throws ProtocolException {
+        var decoder = new FrameDecoder(buffer, Framing.LINE);
+
+        buffer.put("a\nb\nc".getBytes(StandardCharsets.US_ASCII));
+        decoder.decode(this::onFrame);
+
+        assertEquals(List.of("a", "b"), frames);
+
+        buffer.put("d\n".getBytes(StandardCharsets.US_ASCII));
+        decoder.decode(this::onFrame);
+
+        assertEquals(List.of("a", "b", "cd"), frames);
+    }
+
+    @Test
+    void lengthPrefixedFramesSplitAcrossReadsAreJoined() throws ProtocolException {
+        var decoder = new FrameDecoder(buffer, Framing.LENGTH_PREFIXED);
+
+        feedByteByByte(decoder, lengthPrefixed("ACK,1", "", "ACK,22"));
+
+        assertEquals(List.of("ACK,1", "", "ACK,22"), frames);
+    }
+
+    @Test
+    void rawPassesEachReadAsAFrame() throws ProtocolException {
+        var decoder = new FrameDecoder(buffer, Framing.RAW);
+
+        buffer.put("ab".getBytes(StandardCharsets.US_ASCII));
+        decoder.decode(this::onFrame);
+        decoder.decode(this::onFrame);
+
+        assertEquals(List.of("ab"), frames);
+    }
+
+    @Test
+    void oversizeLengthIsRejected() {
+        var decoder = new FrameDecoder(buffer, Framing.LENGTH_PREFIXED, 8);
+
+        buffer.putShort((short) 9);
+
+        assertThrows(ProtocolException.class, () -> decoder.decode(this::onFrame));
+    }
+
+    @Test
+    void lineWithoutDelimiterIsRejected() throws ProtocolException {
+        var decoder = new FrameDecoder(buffer, Framing.LINE, 8);
+
+        buffer.put("12345678\n".getBytes(StandardCharsets.US_ASCII));
+        decoder.decode(this::onFrame);
+
+        buffer.put("123456789".getBytes(StandardCharsets.US_ASCII));
+        decoder.decode(this::onFrame);
+
+        buffer.put((byte) '0');
+
+        assertThrows(ProtocolException.class, () -> decoder.decode(this::onFrame));
+        assertEquals(List.of("12345678"), frames);
+    }
+}
@@ -0,0 +1,112 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputBufferTest {
+
+    private final InputBuffer input = new InputBuffer();
+    private final List<String> applied = new ArrayList<>();
+
+    private final InputBuffer.Target target = new InputBuffer.Target() {
+        @Override
+        public void left(int player) {
+            applied.add(player + ":left");
+        }
+
+        @Override
+        public void right(int player) {
+            applied.add(player + ":right");
+        }
+
+        @Override
+        public void stop(int player) {
+            applied.add(player + ":stop");
+        }
+
+        @Override
+        public void fire(int player) {
+            applied.add(player + ":fire");
+        }
+    };
+
+    private List<String> apply() {
+        applied.clear();
+        input.apply(target);
+        return applied;
+    }
+
+    @Test
+    void directionIsOnlyAppliedWhenItChanges() {
+        input.record(0, Command.LEFT_PRESS);
+
+        assertEquals(List.of("0:left"), apply());
+        assertEquals(List.of(), apply());
+
+        input.record(0, Command.LEFT_RELEASE);
+
+        assertEquals(List.of("0:stop"), apply());
+    }
+
+    @Test
+    void pressAndReleaseBetweenTicksCancelOut() {
+        input.record(1, Command.RIGHT_PRESS);
+        input.record(1, Command.RIGHT_RELEASE);
+
+        assertEquals(List.of(), apply());
+    }
+
+    @Test
+    void keyPressedLastWins() {
+        input.record(0, Command.RIGHT_PRESS);
+        input.record(0, Command.LEFT_PRESS);
+
+        assertEquals(List.of("0:left"), apply());
+
+        input.record(0, Command.LEFT_RELEASE);
+
+        assertEquals(List.of("0:right"), apply());
+    }
+
+    @Test
+    void firePressIsKeptUntilAppliedOnce() {
+        input.record(0, Command.FIRE_PRESS);
+        input.record(0, Command.FIRE_PRESS);
+        input.record(1, Command.FIRE_PRESS);
+
+        assertEquals(List.of("0:fire", "1:fire"), apply());
+        assertEquals(List.of(), apply());
+    }
+
+    @Test
+    void clearReleasesAllKeys() {
+        input.record(1, Command.LEFT_PRESS, 4);
+        apply();
+
+        input.clear(1);
+
+        assertEquals(List.of("1:stop"), apply());
+        assertEquals(-1, input.getAppliedSequence(1));
+    }
+
+    @Test
+    void appliedSequenceIsCapturedInSnapshots() {
+        input.record(0, Command.LEFT_PRESS, 3);
+        input.record(0, Command.LEFT_RELEASE, 4);
+        input.record(1, Command.RIGHT_PRESS);
+
+        var snapshot = new Snapshot();
+        input.capture(snapshot);
+        assertFalse(snapshot.hasInputSequences());
+
+        apply();
+        input.capture(snapshot);
+
+        assertEquals(4, snapshot.getInputSequence(0));
+        assertEquals(-1, snapshot.getInputSequence(1));
+    }
+}
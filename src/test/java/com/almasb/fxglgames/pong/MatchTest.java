@@ -0,0 +1,110 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchTest {
+
+    private static final double DT = 1.0 / 60;
+
+    @Test
+    void firedBallScoresOnTheOpponent() {
+        List<String> events = new ArrayList<>();
+        var match = new Match(events::add, 1, 0);
+
+        match.fire(0);
+
+        for (int tick = 0; tick < 120 && match.getScore(0) == 0; tick++) {
+            match.step(DT);
+        }
+
+        assertEquals(1, match.getScore(0));
+        assertTrue(events.contains(NetworkMessages.BALL_HIT_BAT2), events.toString());
+    }
+
+    @Test
+    void saveAndLoadRestoreTheState() {
+        var match = new Match(event -> { }, 2, 0);
+        match.right(1);
+        match.fire(0);
+        match.fire(1);
+
+        for (int tick = 0; tick < 10; tick++) {
+            match.step(DT);
+        }
+
+        var saved = ByteBuffer.allocate(match.getStateSize());
+        match.save(saved);
+
+        var copy = new Match(event -> { }, 2, 0);
+        copy.load(saved.flip());
+
+        var expected = new Snapshot();
+        var actual = new Snapshot();
+
+        for (int tick = 0; tick < 60; tick++) {
+            match.step(DT);
+            copy.step(DT);
+
+            match.capture(expected);
+            copy.capture(actual);
+
+            assertArrayEquals(SnapshotCodec.encode(expected), SnapshotCodec.encode(actual), "tick " + tick);
+        }
+    }
+
+    @Test
+    void steadyStateTicksDoNotAllocate() {
+        var input = new InputBuffer();
+        var match = new Match(event -> { }, 4);
+        var snapshot = new Snapshot();
+        var frame = ByteBuffer.allocate(64 * 1024);
+
+        Runnable tick = new Runnable() {
+            int tick = 0;
+
+            @Override
+            public void run() {
+                int player = tick % 2;
+
+                input.record(player, tick % 40 < 20 ? Command.LEFT_PRESS : Command.RIGHT_PRESS, tick);
+                input.record(player, tick % 40 < 20 ? Command.RIGHT_RELEASE : Command.LEFT_RELEASE, tick);
+
+                if (tick % 7 == 0) {
+                    input.record(player, Command.FIRE_PRESS, tick);
+                }
+
+                match.setRewind(player, tick % 12);
+
+                input.apply(match);
+                match.step(DT);
+
+                snapshot.setSequence(tick++);
+                match.capture(snapshot);
+                input.capture(snapshot);
+
+                frame.clear();
+                SnapshotCodec.encode(snapshot, frame);
+            }
+        };
+
+        int n = 20_000;
+
+        for (int i = 0; i < n; i++) {
+            tick.run();
+        }
+
+        long allocated = Allocations.measure(() -> {
+            for (int i = 0; i < n; i++) {
+                tick.run();
+            }
+        });
+
+        assertTrue(allocated < Allocations.TOLERANCE, "Allocated " + allocated + " bytes in " + n + " ticks");
+    }
+}
@@ -0,0 +1,113 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioConnectionTest {
+
+    private static final NioServer.Handler HANDLER = new NioServer.Handler() {
+        @Override
+        public void onConnected(NioConnection connection) { }
+
+        @Override
+        public void onMessage(NioConnection connection, ByteBuffer frame) { }
+
+        @Override
+        public void onDisconnected(NioConnection connection) { }
+    };
+
+    private final List<SocketChannel> channels = new ArrayList<>();
+
+    /**
+     * A connection whose socket writes are recorded one by one, as the client would see them
+     * if it read after every write. The loop is not started, the test flushes itself.
+     */
+    private static class RecordingConnection extends NioConnection {
+
+        final List<String> writes = new ArrayList<>();
+
+        // bytes accepted by the next write, the socket takes everything if negative
+        int accept = -1;
+
+        RecordingConnection(SocketChannel channel, Framing framing) throws IOException {
+            super(channel, new NioServer.EventLoop(), framing, HANDLER);
+        }
+
+        @Override
+        int write(ByteBuffer buffer) {
+            int n = accept >= 0 ? Math.min(accept, buffer.remaining()) : buffer.remaining();
+            accept = -1;
+
+            byte[] bytes = new byte[n];
+            buffer.get(bytes);
+            writes.add(new String(bytes, StandardCharsets.US_ASCII));
+            return n;
+        }
+    }
+
+    private RecordingConnection connection(Framing framing) throws IOException {
+        var channel = SocketChannel.open();
+        channels.add(channel);
+        return new RecordingConnection(channel, framing);
+    }
+
+    @AfterEach
+    void closeChannels() throws IOException {
+        for (var channel : channels) {
+            channel.close();
+        }
+    }
+
+    private static byte[] ascii(String message) {
+        return message.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void unframedMessagesOfATickAreWrittenSeparately() throws IOException {
+        var connection = connection(Framing.RAW);
+
+        connection.send(ascii("BALL_HIT_BAT1"));
+        connection.send(ascii("GAME_DATA,1,2,3"));
+        connection.flush();
+
+        assertEquals(List.of("BALL_HIT_BAT1", "GAME_DATA,1,2,3"), connection.writes);
+    }
+
+    @Test
+    void unframedMessageWaitsForTheRestOfAPartialWrite() throws IOException {
+        var connection = connection(Framing.RAW);
+
+        connection.accept = 4;
+        connection.send(ascii("BALL_HIT_BAT1"));
+        connection.send(ascii("GAME_DATA"));
+        connection.flush();
+
+        assertEquals(List.of("BALL"), connection.writes);
+        assertTrue(connection.isBackedUp());
+
+        connection.flush();
+
+        assertEquals(List.of("BALL", "_HIT_BAT1", "GAME_DATA"), connection.writes);
+        assertFalse(connection.isBackedUp());
+    }
+
+    @Test
+    void framedMessagesOfATickShareAWrite() throws IOException {
+        var connection = connection(Framing.LINE);
+
+        connection.send(ascii("BALL_HIT_BAT1"));
+        connection.send(ascii("GAME_DATA,1,2,3"));
+        connection.flush();
+
+        assertEquals(List.of("BALL_HIT_BAT1\nGAME_DATA,1,2,3\n"), connection.writes);
+    }
+}
@@ -0,0 +1,115 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboxTest {
+
+    private final List<List<String>> batches = new ArrayList<>();
+    private boolean ready = true;
+    private int terminated = 0;
+
+    private final Outbox<String> outbox = new Outbox<>(Runnable::run, new Outbox.Sink<>() {
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void write(List<String> batch) {
+            batches.add(new ArrayList<>(batch));
+        }
+    }, () -> terminated++);
+
+    @Test
+    void nothingIsWrittenUntilFlush() {
+        outbox.event("a");
+        outbox.snapshot("s");
+
+        assertEquals(List.of(), batches);
+
+        outbox.flush();
+
+        assertEquals(List.of(List.of("a", "s")), batches);
+    }
+
+    @Test
+    void onlyTheNewestSnapshotIsWrittenAfterTheEvents() {
+        outbox.snapshot("s1");
+        outbox.event("a");
+        outbox.snapshot("s2");
+        outbox.event("b");
+        outbox.snapshot("s3");
+
+        assertTrue(outbox.hasPendingSnapshot());
+
+        outbox.flush();
+
+        assertEquals(List.of(List.of("a", "b", "s3")), batches);
+        assertEquals(2, outbox.getDroppedSnapshots());
+        assertFalse(outbox.hasPendingSnapshot());
+    }
+
+    @Test
+    void backedUpSinkKeepsMessagesUntilItIsReady() {
+        ready = false;
+        outbox.event("a");
+        outbox.snapshot("s1");
+        outbox.flush();
+
+        outbox.event("b");
+        outbox.snapshot("s2");
+
+        assertEquals(List.of(), batches);
+        assertEquals(2, outbox.getPendingEvents());
+
+        ready = true;
+        outbox.flush();
+
+        assertEquals(List.of(List.of("a", "b", "s2")), batches);
+        assertEquals(0, outbox.getPendingEvents());
+    }
+
+    @Test
+    void lagBeyondTheEventLimitTerminates() {
+        ready = false;
+
+        for (int i = 0; i < Outbox.MAX_PENDING_EVENTS; i++) {
+            outbox.event("e" + i);
+        }
+
+        assertEquals(0, terminated);
+
+        outbox.event("one too many");
+
+        assertEquals(1, terminated);
+        assertEquals(1, outbox.getDroppedEvents());
+
+        // a lagging client is not written to or terminated again
+        outbox.event("more");
+        ready = true;
+        outbox.flush();
+
+        assertEquals(List.of(), batches);
+        assertEquals(1, terminated);
+    }
+
+    @Test
+    void closeWritesTheEventsThenTerminates() {
+        outbox.event("a");
+        outbox.snapshot("s");
+        outbox.close();
+
+        assertEquals(List.of(List.of("a")), batches);
+        assertEquals(1, terminated);
+
+        outbox.event("b");
+        outbox.flush();
+
+        assertEquals(1, batches.size());
+    }
+}
@@ -0,0 +1,121 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayTest {
+
+    private static final double DT = 1.0 / 60;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Records a match tick by tick the way a {@link Room} does: input first, with events of the input recorded
+     * as they happen, then rewind changes, then the step and a keyframe every {@link Journal#KEYFRAME_INTERVAL} ticks.
+     */
+    private Path record(int ticks, Script script) throws IOException {
+        Path file = dir.resolve("match.journal");
+        long[] tick = { 0 };
+
+        Journal[] journal = new Journal[1];
+        var match = new Match(event -> journal[0].event(tick[0], event), 2, 12);
+
+        try (var j = new Journal(file, DT, match.getBulletsPerTank(), match.getMaxRewindTicks())) {
+            journal[0] = j;
+            j.keyframe(-1, match);
+
+            var input = new InputBuffer();
+            var target = j.record(match, () -> tick[0]);
+
+            for (; tick[0] < ticks; tick[0]++) {
+                script.beforeTick(tick[0], input, j, match);
+
+                input.apply(target);
+                script.afterInput(tick[0], j, match);
+                match.step(DT);
+
+                if ((tick[0] + 1) % Journal.KEYFRAME_INTERVAL == 0) {
+                    j.keyframe(tick[0], match);
+                }
+            }
+        }
+
+        return file;
+    }
+
+    private interface Script {
+
+        void beforeTick(long tick, InputBuffer input, Journal journal, Match match);
+
+        default void afterInput(long tick, Journal journal, Match match) { }
+    }
+
+    @Test
+    void inputAfterAFireInTheSameTickReplaysExactly() throws IOException {
+        // player 0's fire is applied, and its event recorded, before player 1's input of the same tick
+        Path file = record(180, (tick, input, journal, match) -> {
+            if (tick == 10) {
+                input.record(0, Command.FIRE_PRESS);
+                input.record(1, Command.LEFT_PRESS);
+            }
+
+            if (tick == 40) {
+                input.record(1, Command.LEFT_RELEASE);
+                input.record(1, Command.FIRE_PRESS);
+            }
+        });
+
+        var result = Replay.run(file);
+
+        assertEquals(0, result.getMismatches(), result.toString());
+        assertEquals(3, result.getKeyframes());
+        assertEquals(180, result.getTicks());
+    }
+
+    @Test
+    void rewindAfterAFireInTheSameTickReplaysExactly() throws IOException {
+        Path file = record(120, new Script() {
+            @Override
+            public void beforeTick(long tick, InputBuffer input, Journal journal, Match match) {
+                if (tick % 20 == 5) {
+                    input.record(0, Command.FIRE_PRESS);
+                    input.record(1, tick % 40 == 5 ? Command.RIGHT_PRESS : Command.RIGHT_RELEASE);
+                }
+            }
+
+            @Override
+            public void afterInput(long tick, Journal journal, Match match) {
+                if (tick % 20 == 5) {
+                    int ticks = (int) (tick / 10) % 12;
+                    journal.rewind(tick, 0, ticks);
+                    match.setRewind(0, ticks);
+                }
+            }
+        });
+
+        var result = Replay.run(file);
+
+        assertEquals(0, result.getMismatches(), result.toString());
+    }
+
+    @Test
+    void divergingJournalIsReported() throws IOException {
+        // an input in the journal that the recorded match never saw
+        Path file = record(120, (tick, input, journal, match) -> {
+            if (tick == 10) {
+                journal.input(tick, 1, Journal.RIGHT);
+            }
+        });
+
+        var result = Replay.run(file);
+
+        assertTrue(result.getMismatches() > 0);
+        assertEquals("tick 59: state differs from keyframe", result.getFirstMismatch());
+    }
+}
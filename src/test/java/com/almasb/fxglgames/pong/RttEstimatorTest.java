@@ -0,0 +1,75 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RttEstimatorTest {
+
+    private static final long INTERVAL = RttEstimator.PING_INTERVAL_MS * 1000L;
+
+    private final RttEstimator rtt = new RttEstimator();
+
+    @Test
+    void pingsAreSentOncePerInterval() {
+        assertEquals("PING,1000", rtt.nextPing(1000));
+        assertNull(rtt.nextPing(1000 + INTERVAL - 1));
+        assertEquals("PING," + (1000 + INTERVAL), rtt.nextPing(1000 + INTERVAL));
+    }
+
+    @Test
+    void answeredPingsAreSmoothed() {
+        long now = 0;
+
+        for (int i = 0; i < 50; i++, now += INTERVAL) {
+            rtt.nextPing(now);
+
+            // 40 ms round trip, the client's clock 5 s ahead
+            assertTrue(rtt.onPong(now, now + 20_000 + 5_000_000, now + 40_000));
+        }
+
+        assertEquals(50, rtt.getSamples());
+        assertEquals(40_000, rtt.getRtt());
+        assertEquals(5_000_000, rtt.getClockOffset());
+        assertTrue(rtt.getJitter() < 1_000, "jitter " + rtt.getJitter());
+    }
+
+    @Test
+    void forgedEchoIsIgnored() {
+        rtt.nextPing(20_000_000);
+
+        // a time the server never sent, claiming a round trip just under the limit
+        assertFalse(rtt.onPong(11_000_000, 0, 20_000_100));
+        assertFalse(rtt.onPong(-1, 0, 20_000_100));
+
+        assertEquals(0, rtt.getSamples());
+        assertEquals(0, rtt.getRtt());
+
+        // the real answer still counts
+        assertTrue(rtt.onPong(20_000_000, 0, 20_030_000));
+        assertEquals(30_000, rtt.getRtt());
+    }
+
+    @Test
+    void staleEchoIsIgnored() {
+        rtt.nextPing(0);
+        rtt.nextPing(INTERVAL);
+
+        // the answer to the first ping arrives after the second one was sent
+        assertFalse(rtt.onPong(0, 0, INTERVAL + 10_000));
+
+        assertTrue(rtt.onPong(INTERVAL, 0, INTERVAL + 10_000));
+
+        // and each ping is only answered once
+        assertFalse(rtt.onPong(INTERVAL, 0, INTERVAL + 5_000_000));
+
+        assertEquals(1, rtt.getSamples());
+        assertEquals(10_000, rtt.getRtt());
+    }
+
+    @Test
+    void pongWithoutAPingIsIgnored() {
+        assertFalse(rtt.onPong(0, 0, 100));
+        assertEquals(0, rtt.getSamples());
+    }
+}
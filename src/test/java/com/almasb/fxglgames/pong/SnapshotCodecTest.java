@@ -0,0 +1,142 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotCodecTest {
+
+    private static Snapshot snapshot(int sequence) {
+        var snapshot = new Snapshot();
+        snapshot.setSequence(sequence);
+        snapshot.setBatX(0, 100.25);
+        snapshot.setBatX(1, 300.5);
+        snapshot.setScore(0, 3);
+        snapshot.setScore(1, 65535);
+        snapshot.setBall(0, 10.75, 20);
+        snapshot.clearBall(1);
+        return snapshot;
+    }
+
+    private static void assertSameState(Snapshot expected, Snapshot actual) {
+        assertEquals(expected.getSequence(), actual.getSequence());
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(expected.getBatX(i), actual.getBatX(i), "bat " + i);
+            assertEquals(expected.getScore(i), actual.getScore(i), "score " + i);
+            assertEquals(expected.hasBall(i), actual.hasBall(i), "ball " + i);
+
+            if (expected.hasBall(i)) {
+                assertEquals(expected.getBallX(i), actual.getBallX(i), "ball x " + i);
+                assertEquals(expected.getBallY(i), actual.getBallY(i), "ball y " + i);
+            }
+
+            assertEquals(expected.getInputSequence(i), actual.getInputSequence(i), "input " + i);
+        }
+
+        assertEquals(expected.hasProjectiles(), actual.hasProjectiles());
+        assertEquals(expected.getProjectileCount(), actual.getProjectileCount());
+
+        for (int i = 0; i < expected.getProjectileCount(); i++) {
+            assertEquals(expected.getProjectileOwner(i), actual.getProjectileOwner(i));
+            assertEquals(expected.getProjectileX(i), actual.getProjectileX(i));
+            assertEquals(expected.getProjectileY(i), actual.getProjectileY(i));
+        }
+    }
+
+    @Test
+    void keyframeRoundTrip() {
+        var snapshot = snapshot(7);
+        snapshot.clearProjectiles(true);
+        snapshot.addProjectile(1, 50, 60.5);
+        snapshot.setInputSequence(1, 12);
+
+        byte[] frame = SnapshotCodec.encode(snapshot);
+        var decoded = new Snapshot();
+        SnapshotCodec.decode(ByteBuffer.wrap(frame), decoded);
+
+        assertEquals(SnapshotCodec.TYPE_SNAPSHOT, SnapshotCodec.peekType(ByteBuffer.wrap(frame)));
+        assertSameState(snapshot, decoded);
+    }
+
+    @Test
+    void deltaRoundTrip() {
+        var baseline = snapshot(10);
+        baseline.clearProjectiles(true);
+        baseline.addProjectile(0, 1, 2);
+
+        var current = snapshot(14);
+        current.setBatX(1, 290);
+        current.setScore(0, 4);
+        current.clearBall(0);
+        current.setBall(1, 5, 6);
+        current.clearProjectiles(true);
+        current.addProjectile(0, 1, 2);
+        current.addProjectile(1, 200, 300);
+        current.setInputSequence(0, 99);
+
+        byte[] frame = SnapshotCodec.encodeDelta(baseline, current);
+        var in = ByteBuffer.wrap(frame);
+
+        assertEquals(SnapshotCodec.TYPE_DELTA, SnapshotCodec.peekType(in));
+        assertEquals(10, SnapshotCodec.peekBaseline(in));
+
+        var decoded = new Snapshot();
+        SnapshotCodec.decodeDelta(in, baseline, decoded);
+
+        assertSameState(current, decoded);
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    void deltaOfUnchangedSnapshotCarriesNoFields() {
+        var baseline = snapshot(1);
+        var current = snapshot(2);
+
+        // moves below the wire precision do not count
+        current.setBatX(0, current.getBatX(0) + 0.01);
+
+        byte[] frame = SnapshotCodec.encodeDelta(baseline, current);
+
+        assertEquals(12, frame.length);
+        assertEquals(0, SnapshotCodec.changedFields(baseline, current));
+
+        SnapshotCodec.decodeDelta(ByteBuffer.wrap(frame), baseline, baseline);
+        assertEquals(2, baseline.getSequence());
+        assertEquals(100.25, baseline.getBatX(0));
+    }
+
+    @Test
+    void deltaAgainstTheWrongBaselineIsRejected() {
+        byte[] frame = SnapshotCodec.encodeDelta(snapshot(1), snapshot(2));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> SnapshotCodec.decodeDelta(ByteBuffer.wrap(frame), snapshot(0), new Snapshot()));
+    }
+
+    @Test
+    void textCarriesOptionalPartsOnlyWhenPresent() {
+        var snapshot = snapshot(3);
+
+        assertFalse(SnapshotCodec.toText(snapshot).contains("INPUT"));
+
+        snapshot.clearProjectiles(true);
+        snapshot.addProjectile(1, 50, 60);
+        snapshot.setInputSequence(0, 5);
+
+        String text = SnapshotCodec.toText(snapshot);
+
+        assertTrue(text.startsWith("GAME_DATA,"), text);
+        assertTrue(text.endsWith(",1,1,50.0,60.0,INPUT,5,-1"), text);
+    }
+
+    @Test
+    void eventRoundTrip() {
+        byte[] frame = SnapshotCodec.encodeEvent("BALL_HIT_WALL_UP");
+
+        assertEquals(SnapshotCodec.TYPE_EVENT, SnapshotCodec.peekType(ByteBuffer.wrap(frame)));
+        assertEquals("BALL_HIT_WALL_UP", SnapshotCodec.decodeEvent(ByteBuffer.wrap(frame)));
+    }
+}
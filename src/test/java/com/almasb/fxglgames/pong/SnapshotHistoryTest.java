@@ -0,0 +1,93 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotHistoryTest {
+
+    private final SnapshotHistory history = new SnapshotHistory();
+
+    private static EncodedSnapshot encoded(int sequence, double batX) {
+        var snapshot = new Snapshot();
+        snapshot.setSequence(sequence);
+        snapshot.setBatX(0, batX);
+
+        var encoded = new EncodedSnapshot();
+        encoded.reset(snapshot);
+        return encoded;
+    }
+
+    @Test
+    void keyframesAreSentUntilAnAck() {
+        var first = encoded(0, 10);
+
+        assertSame(first.getKeyframe(), history.encode(first));
+        assertEquals(SnapshotCodec.TYPE_SNAPSHOT, SnapshotCodec.peekType(ByteBuffer.wrap(history.encode(encoded(1, 20)))));
+        assertNull(history.getBaseline());
+        assertEquals(0, history.getUnacknowledged());
+    }
+
+    @Test
+    void deltasAreSentAgainstTheAcknowledgedSnapshot() {
+        history.encode(encoded(0, 10));
+        history.encode(encoded(1, 20));
+        history.acknowledge(0);
+
+        var in = ByteBuffer.wrap(history.encode(encoded(2, 30)));
+
+        assertEquals(SnapshotCodec.TYPE_DELTA, SnapshotCodec.peekType(in));
+        assertEquals(0, SnapshotCodec.peekBaseline(in));
+
+        var decoded = new Snapshot();
+        SnapshotCodec.decodeDelta(in, history.getBaseline(), decoded);
+        assertEquals(30, decoded.getBatX(0));
+    }
+
+    @Test
+    void unacknowledgedCountsSnapshotsSentAfterTheAck() {
+        for (int i = 0; i < 5; i++) {
+            history.encode(encoded(i, i));
+        }
+
+        history.acknowledge(1);
+
+        assertEquals(3, history.getUnacknowledged());
+    }
+
+    @Test
+    void olderAcksAreIgnored() {
+        history.encode(encoded(0, 0));
+        history.encode(encoded(1, 1));
+        history.acknowledge(1);
+        history.acknowledge(0);
+
+        assertEquals(1, history.getAckedSequence());
+        assertEquals(1, history.getBaseline().getSequence());
+    }
+
+    @Test
+    void ackOutsideTheHistoryFallsBackToKeyframes() {
+        history.encode(encoded(0, 0));
+        history.acknowledge(0);
+
+        for (int i = 1; i <= SnapshotHistory.SIZE; i++) {
+            history.encode(encoded(i, i));
+        }
+
+        assertNull(history.getBaseline());
+
+        var next = encoded(SnapshotHistory.SIZE + 1, 0);
+        assertSame(next.getKeyframe(), history.encode(next));
+    }
+
+    @Test
+    void ackOfASnapshotNeverSentHasNoBaseline() {
+        history.encode(encoded(0, 0));
+        history.acknowledge(5);
+
+        assertNull(history.getBaseline());
+    }
+}
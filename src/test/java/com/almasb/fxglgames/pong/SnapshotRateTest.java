@@ -0,0 +1,57 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotRateTest {
+
+    private static final long INTERVAL = Math.round(TickScheduler.SNAPSHOT_INTERVAL * 1_000_000_000L);
+
+    private final SnapshotRate rate = new SnapshotRate();
+
+    @Test
+    void maximumIsTheRateTheServerTakesSnapshotsAt() {
+        assertEquals(1 / TickScheduler.SNAPSHOT_INTERVAL, SnapshotRate.MAX_RATE, 1e-9);
+        assertEquals(SnapshotRate.MAX_RATE, rate.getRate());
+    }
+
+    @Test
+    void clientThatKeepsUpGetsEverySnapshot() {
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(rate.onSnapshot(i * INTERVAL, i * 100L, false), "snapshot " + i);
+        }
+
+        assertEquals(SnapshotRate.MAX_RATE, rate.getRate());
+    }
+
+    @Test
+    void backloggedClientIsSentWhatItsConnectionDrains() {
+        long now = 0;
+        long bytes = 0;
+        int sent = 0;
+
+        // 100 bytes per snapshot at first, then the connection only drains 500 bytes per second
+        for (int i = 0; i < 10; i++, now += INTERVAL) {
+            rate.onSnapshot(now, bytes, false);
+            bytes += 100;
+        }
+
+        int n = (int) Math.round(10 / TickScheduler.SNAPSHOT_INTERVAL);
+
+        for (int i = 0; i < n; i++, now += INTERVAL) {
+            if (rate.onSnapshot(now, bytes, true)) {
+                sent++;
+            }
+
+            bytes += Math.round(500 * TickScheduler.SNAPSHOT_INTERVAL);
+        }
+
+        // 75% of 500 bytes per second at 100 bytes per snapshot, but not below the minimum
+        double expected = Math.max(SnapshotRate.MIN_RATE, 3.75);
+
+        assertEquals(expected, rate.getRate(), 0.5);
+        assertEquals(expected * 10, sent, 0.2 * expected * 10 + 10);
+        assertEquals(500, rate.getThroughput(), 50);
+    }
+}
@@ -0,0 +1,121 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SweptPhysicsTest {
+
+    private static final double WIDTH = 800;
+    private static final double HEIGHT = 600;
+    private static final double BODY = 15;
+    private static final double BOX = 100;
+
+    private final double[] boxX = { 300 };
+    private final double[] boxY = { 300 };
+    private final SweptPhysics physics = new SweptPhysics(WIDTH, HEIGHT, BODY, BOX, boxX, boxY);
+
+    private final double[] x = new double[1];
+    private final double[] y = new double[1];
+    private final double[] vx = new double[1];
+    private final double[] vy = new double[1];
+
+    private final List<String> contacts = new ArrayList<>();
+
+    private SweptPhysics.Contacts contacts(boolean bounceOffBoxes) {
+        return new SweptPhysics.Contacts() {
+            @Override
+            public void onWall(int body, int wall) {
+                contacts.add("wall " + wall);
+            }
+
+            @Override
+            public boolean onBox(int body, int box) {
+                contacts.add("box " + box);
+                return bounceOffBoxes;
+            }
+        };
+    }
+
+    private void body(double x, double y, double vx, double vy) {
+        this.x[0] = x;
+        this.y[0] = y;
+        this.vx[0] = vx;
+        this.vy[0] = vy;
+    }
+
+    @Test
+    void fastBodyStopsAtTheBoxInsteadOfPassingThrough() {
+        // 1000 px in one tick, far more than the box is wide
+        body(10, 330, 60_000, 0);
+
+        assertFalse(physics.move(0, x, y, vx, vy, 1 / 60.0, contacts(false)));
+
+        assertEquals(List.of("box 0"), contacts);
+        assertEquals(300 - BODY, x[0], 1e-9);
+        assertEquals(330, y[0]);
+    }
+
+    @Test
+    void fastBodyBouncesOffTheBoxAndContinues() {
+        // 300 px in one tick: 275 px to the box, the remaining 25 px back
+        body(10, 330, 18_000, 0);
+
+        assertTrue(physics.move(0, x, y, vx, vy, 1 / 60.0, contacts(true)));
+
+        assertEquals(List.of("box 0"), contacts);
+        assertEquals(-18_000, vx[0]);
+        assertEquals(300 - BODY - 25, x[0], 1e-9);
+    }
+
+    @Test
+    void hitsTheBoxAtAnySpeedAndTickLength() {
+        for (double speed = 500; speed <= 500_000; speed *= 3) {
+            for (double dt : new double[] { 1 / 120.0, 1 / 60.0, 1 / 20.0, 0.5 }) {
+                contacts.clear();
+                body(300 + BOX / 2, 10, 0, speed);
+
+                physics.move(0, x, y, vx, vy, dt, contacts(false));
+
+                if (speed * dt >= 300 - BODY - 10) {
+                    assertEquals(List.of("box 0"), contacts, "speed " + speed + ", dt " + dt);
+                    assertEquals(300 - BODY, y[0], 1e-9);
+                } else {
+                    assertEquals(List.of(), contacts);
+                }
+            }
+        }
+    }
+
+    @Test
+    void bodyStaysInsideTheWalls() {
+        boxX[0] = 10_000;
+        physics.updateBoxes();
+
+        body(400, 300, -50_000, -37_000);
+
+        for (int tick = 0; tick < 100; tick++) {
+            physics.move(0, x, y, vx, vy, 1 / 60.0, contacts(true));
+
+            assertTrue(x[0] >= 0 && x[0] <= WIDTH - BODY, "x " + x[0]);
+            assertTrue(y[0] >= 0 && y[0] <= HEIGHT - BODY, "y " + y[0]);
+        }
+
+        assertTrue(contacts.contains("wall " + SweptPhysics.WALL_LEFT));
+        assertTrue(contacts.contains("wall " + SweptPhysics.WALL_TOP));
+    }
+
+    @Test
+    void movedBoxIsHitAfterUpdate() {
+        boxX[0] = 0;
+        physics.updateBoxes();
+
+        body(10, 10, 0, 60_000);
+        physics.move(0, x, y, vx, vy, 1 / 60.0, contacts(false));
+
+        assertEquals(List.of("box 0"), contacts);
+    }
+}
@@ -0,0 +1,44 @@
+package com.almasb.fxglgames.pong;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A client without a connection, which keeps the messages written to it.
+ */
+class TestClient extends Client {
+
+    final List<String> written = new ArrayList<>();
+    boolean terminated = false;
+
+    private final Outbox<String> outbox = new Outbox<>(Runnable::run, written::addAll, () -> terminated = true);
+
+    @Override
+    void send(EncodedEvent event) {
+        outbox.event(event.getMessage());
+    }
+
+    @Override
+    void sendSnapshot(EncodedSnapshot snapshot) {
+        outbox.snapshot(snapshot.getText());
+    }
+
+    @Override
+    public Outbox<String> getOutbox() {
+        return outbox;
+    }
+
+    /**
+     * @return the resume token of the last connect message written to this client, or 0 if none
+     */
+    long getToken() {
+        for (int i = written.size() - 1; i >= 0; i--) {
+            String message = written.get(i);
+
+            if (message.startsWith(NetworkMessages.PLAYER1_CONNECT + ",") || message.startsWith(NetworkMessages.PLAYER2_CONNECT + ","))
+                return Long.parseLong(message.substring(message.indexOf(',') + 1));
+        }
+
+        return 0;
+    }
+}
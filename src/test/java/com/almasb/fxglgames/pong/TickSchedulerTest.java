@@ -0,0 +1,47 @@
+package com.almasb.fxglgames.pong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TickSchedulerTest {
+
+    private int ticks = 0;
+    private int snapshots = 0;
+
+    private TickScheduler scheduler(int tickRate, int snapshotRate, int maxCatchUpTicks) {
+        return new TickScheduler(tickRate, snapshotRate, maxCatchUpTicks, dt -> ticks++, () -> snapshots++);
+    }
+
+    @Test
+    void snapshotRateIsRoundedToWholeTicks() {
+        var scheduler = scheduler(60, 25, 5);
+
+        for (int i = 0; i < 60; i++) {
+            scheduler.advance(1 / 60.0 + 1e-9);
+        }
+
+        assertEquals(60, ticks);
+        assertEquals(30, snapshots);
+        assertEquals(1 / 30.0, scheduler.getSnapshotInterval(), 1e-12);
+    }
+
+    @Test
+    void defaultIntervalMatchesTheDefaultScheduler() {
+        var scheduler = scheduler(TickScheduler.TICK_RATE, TickScheduler.SNAPSHOT_RATE, TickScheduler.MAX_CATCH_UP_TICKS);
+
+        assertEquals(TickScheduler.SNAPSHOT_INTERVAL, scheduler.getSnapshotInterval(), 1e-12);
+    }
+
+    @Test
+    void ticksBeyondTheCatchUpLimitAreSkipped() {
+        var scheduler = scheduler(60, 60, 5);
+
+        scheduler.advance(1.0 + 1e-9);
+
+        assertEquals(5, ticks);
+        assertEquals(1, snapshots);
+        assertEquals(55, scheduler.getSkippedTicks());
+        assertEquals(5, scheduler.getTick());
+    }
+}